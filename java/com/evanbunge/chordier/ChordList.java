@@ -1,22 +1,48 @@
 package com.evanbunge.chordier;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /*
 ChordList
-    provides the chords of the given key
+    provides the chords of the given key.
+    the chords of every major and minor key are worked out once when the class
+    is loaded, and each key has one shared list that cannot be changed, so
+    getting the chords of a key allocates nothing and finding a chord in its
+    key is a hash lookup.
  */
 public class ChordList
 {
     // bank of all possible chords
-    private final String[] m_chordBank = { "C", "C♯", "C♯♯", "D♭♭", "D♭", "D", "D♯", "D♯♯", "E♭♭",
-                                           "E♭", "E", "E♯", "", "F♭", "F", "F♯", "F♯♯", "G♭♭", "G♭",
-                                           "G", "G♯", "G♯♯", "A♭♭", "A♭", "A", "A♯", "A♯♯", "B♭♭",
-                                           "B♭", "B", "B♯", "", "C♭" };
-    // list of all chords in the given key
-    private List<String> m_chords;
+    private static final String[] CHORD_BANK = { "C", "C♯", "C♯♯", "D♭♭", "D♭", "D", "D♯", "D♯♯", "E♭♭",
+                                                 "E♭", "E", "E♯", "", "F♭", "F", "F♯", "F♯♯", "G♭♭", "G♭",
+                                                 "G", "G♯", "G♯♯", "A♭♭", "A♭", "A", "A♯", "A♯♯", "B♭♭",
+                                                 "B♭", "B", "B♯", "", "C♭" };
+    // the chord list of every key, by key name
+    private static final Map<String, ChordList> KEYS = new HashMap<>();
+
+    static
+    {
+        for ( int index = 0; index < CHORD_BANK.length; index++ )
+        {
+            String key = CHORD_BANK[ index ];
+            if ( ! key.isEmpty() )
+            {
+                KEYS.put( key, new ChordList( index ) );
+                KEYS.put( key + "m", new ChordList( ( index + 9 ) % CHORD_BANK.length ) );
+            }
+        }
+    }
+
+    // the chords of the key by degree, 0 to 6
+    private final String[] m_chords;
+    // the degree of each chord of the key by name
+    private final Map<String, Integer> m_degrees;
+    // the chords of the key as a list that cannot be changed
+    private final List<String> m_chordList;
 
     /*
     NAME
@@ -25,41 +51,59 @@ public class ChordList
 
     SYNOPSIS
 
-        ChordList( String a_key )
+        ChordList( int a_index )
 
-            a_key --> the chosen key
+            a_index --> the index of the major key in the chordBank,
+                        the relative major of a minor key
 
     DESCRIPTION
 
-        Gets the index of the key in the chordBank.
-        If the key is minor, the index of the relative major key is found.
-        The chord list is filled with the chords of the key
+        fills the chords of the key and the degree of each chord
      */
-    public ChordList( String a_key )
+    private ChordList( int a_index )
     {
-        m_chords = new ArrayList<>();
-        int index = Arrays.asList( m_chordBank )
-                          .indexOf( a_key );
-
-        if ( a_key.endsWith( "m" ) )
+        m_chords = FillList( a_index );
+        m_degrees = new HashMap<>();
+        for ( int i = m_chords.length - 1; i >= 0; i-- )
         {
-            String key = a_key.substring( 0, a_key.length() - 1 );
-            index = Arrays.asList( m_chordBank )
-                          .indexOf( key );
-            index = ( index + 9 ) % m_chordBank.length;
+            m_degrees.put( m_chords[ i ], i );
         }
+        m_chordList = Collections.unmodifiableList( Arrays.asList( m_chords ) );
+    }
+
+    /*
+    NAME
+
+        Get - gets the chord list of a key
+
+    SYNOPSIS
+
+        ChordList Get( String a_key )
+
+            a_key --> the chosen key, a minor key ends with "m"
 
-        FillList( index );
+    RETURNS
+
+        the shared chord list of the key
+     */
+    public static ChordList Get( String a_key )
+    {
+        ChordList chords = KEYS.get( a_key );
+        if ( chords == null )
+        {
+            throw new IllegalArgumentException( "unknown key " + a_key );
+        }
+        return chords;
     }
 
     /*
     NAME
 
-        FillList - adds the seven chords of the given key to the chord list
+        FillList - gets the seven chords of the given key
 
     SYNOPSIS
 
-        voidFillList( int a_index )
+        String[] FillList( int a_index )
 
             a_index --> the index of the key in the chordBank
 
@@ -67,16 +111,20 @@ public class ChordList
 
         adds each chord of the key in order.
         the pattern of the indices for the chords is always the same.
+
+    RETURNS
+
+        the chords of the key
      */
-    private void FillList( int a_index )
+    private static String[] FillList( int a_index )
     {
-        m_chords.add( m_chordBank[ a_index ] );
-        m_chords.add( m_chordBank[ ( a_index + 5 ) % m_chordBank.length ] + "m" );
-        m_chords.add( m_chordBank[ ( a_index + 10 ) % m_chordBank.length ] + "m" );
-        m_chords.add( m_chordBank[ ( a_index + 14 ) % m_chordBank.length ] );
-        m_chords.add( m_chordBank[ ( a_index + 19 ) % m_chordBank.length ] );
-        m_chords.add( m_chordBank[ ( a_index + 24 ) % m_chordBank.length ] + "m" );
-        m_chords.add( m_chordBank[ ( a_index + 29 ) % m_chordBank.length ] + "°" );
+        return new String[] { CHORD_BANK[ a_index ],
+                              CHORD_BANK[ ( a_index + 5 ) % CHORD_BANK.length ] + "m",
+                              CHORD_BANK[ ( a_index + 10 ) % CHORD_BANK.length ] + "m",
+                              CHORD_BANK[ ( a_index + 14 ) % CHORD_BANK.length ],
+                              CHORD_BANK[ ( a_index + 19 ) % CHORD_BANK.length ],
+                              CHORD_BANK[ ( a_index + 24 ) % CHORD_BANK.length ] + "m",
+                              CHORD_BANK[ ( a_index + 29 ) % CHORD_BANK.length ] + "°" };
     }
 
     /*
@@ -96,7 +144,7 @@ public class ChordList
      */
     public String GetChord( int a_chordIndex )
     {
-        return m_chords.get( a_chordIndex );
+        return m_chords[ a_chordIndex ];
     }
 
     /*
@@ -112,11 +160,12 @@ public class ChordList
 
     RETURNS
 
-        the index of the chord in the key
+        the index of the chord in the key, -1 if it is not in the key
      */
     public int GetChordIndex( String a_chord )
     {
-        return m_chords.indexOf( a_chord );
+        Integer degree = m_degrees.get( a_chord );
+        return degree == null ? - 1 : degree;
     }
 
     /*
@@ -129,11 +178,11 @@ public class ChordList
 
     RETURNS
 
-        A copy of the list of chords in the key
+        the list of chords in the key, which cannot be changed
      */
     public List<String> GetAllChords()
     {
-        return m_chords;
+        return m_chordList;
     }
 
 }
@@ -0,0 +1,1176 @@
+package com.evanbunge.chordier;
+
+import java.io.BufferedReader;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/*
+ChordModel
+    holds the trained markov chain counts used to suggest chords
+    and converts them to and from the compiled model file
+
+    the end table looks at the chords before the target,
+    the mid table alternates between the chords before and after it.
+    both back off to fewer chords when a context is rare.
+
+    a model is trained by one thread, then frozen when it is published.
+    a frozen model is never changed again, so any thread can query it
+    without locking. retraining copies it and publishes the copy.
+
+    an overlay is a model whose tables hold only counts added on top of a
+    frozen base model, e.g. the progressions one user saved. queries add the
+    two together as they go, so any number of overlays can share one base
+    and copying an overlay to retrain it copies only what it added.
+ */
+public class ChordModel
+{
+    // first int of a compiled model file, "CHRD"
+    private static final int MAGIC = 0x43485244;
+    // version of the compiled model layout, bump whenever Write changes
+    public static final int VERSION = 6;
+    // chords before the target used by the end table unless configured otherwise
+    public static final int DEFAULT_END_ORDER = 3;
+    // chords around the target used by the mid table unless configured otherwise
+    public static final int DEFAULT_MID_ORDER = 4;
+    // probability searches give a chord never seen in its context, so a fixed chord can always be placed
+    public static final float MIN_PROBABILITY = 1e-4f;
+    // smoothing applied to compiled models unless configured otherwise
+    public static final int DEFAULT_SMOOTHING = CountTable.SMOOTH_KNESER_NEY;
+    // amount added to every count when add-k smoothing is chosen without a k
+    public static final float DEFAULT_ADD_K = 0.5f;
+    // bits per log probability of compiled models unless configured otherwise, 0 to keep the counts
+    public static final int DEFAULT_BITS = 16;
+
+    // counts for suggesting chords in the middle of a progression
+    private final NGramTable m_mid;
+    // counts for suggesting chords at the end of a progression
+    private final NGramTable m_end;
+    // the frozen model whose counts are added to these, null unless this is an overlay
+    private final ChordModel m_base;
+    // set once the model is published, after which it cannot be changed
+    private boolean m_frozen;
+
+    /*
+    NAME
+
+        ChordModel - constructor for ChordModel class
+
+    SYNOPSIS
+
+        ChordModel()
+
+    DESCRIPTION
+
+        creates an empty model with the default orders ready to be trained
+     */
+    public ChordModel()
+    {
+        this( DEFAULT_END_ORDER, DEFAULT_MID_ORDER );
+    }
+
+    /*
+    NAME
+
+        ChordModel - constructor for ChordModel class with given orders
+
+    SYNOPSIS
+
+        ChordModel( int a_endOrder, int a_midOrder )
+
+            a_endOrder --> the number of chords before the target the end table looks at
+            a_midOrder --> the number of chords around the target the mid table looks at
+
+    DESCRIPTION
+
+        creates an empty model ready to be trained
+     */
+    public ChordModel( int a_endOrder, int a_midOrder )
+    {
+        this( new NGramTable( a_endOrder ), new NGramTable( a_midOrder ), null );
+    }
+
+    /*
+    NAME
+
+        ChordModel - constructor for ChordModel class from existing tables
+
+    SYNOPSIS
+
+        ChordModel( NGramTable a_end, NGramTable a_mid, ChordModel a_base )
+
+            a_end --> counts for the end of a progression
+            a_mid --> counts for the middle of a progression
+            a_base --> the model the counts are added to, or null
+     */
+    private ChordModel( NGramTable a_end, NGramTable a_mid, ChordModel a_base )
+    {
+        m_end = a_end;
+        m_mid = a_mid;
+        m_base = a_base;
+    }
+
+    /*
+    NAME
+
+        Overlay - creates an empty overlay on a model
+
+    SYNOPSIS
+
+        ChordModel Overlay( ChordModel a_base )
+
+            a_base --> the frozen, ranked model to add to, not itself an overlay
+
+    DESCRIPTION
+
+        the overlay has the orders of its base. training it only counts into its own
+            tables, which stay as small as what it was taught. it needs no ranking.
+
+    RETURNS
+
+        the overlay, answering queries exactly like its base until it is trained
+     */
+    public static ChordModel Overlay( ChordModel a_base )
+    {
+        if ( ! a_base.IsFrozen() || a_base.m_base != null )
+        {
+            throw new IllegalArgumentException( "an overlay needs a frozen model that is not an overlay" );
+        }
+        return new ChordModel( new NGramTable( a_base.GetEndOrder() ), new NGramTable( a_base.GetMidOrder() ), a_base );
+    }
+
+    /*
+    NAME
+
+        GetBase - gets the model an overlay adds to
+
+    SYNOPSIS
+
+        ChordModel GetBase()
+
+    RETURNS
+
+        the base model, or null if this is not an overlay
+     */
+    public ChordModel GetBase()
+    {
+        return m_base;
+    }
+
+    /*
+    NAME
+
+        Train - builds a ranked model from a progression corpus
+
+    SYNOPSIS
+
+        ChordModel Train( Reader a_corpus )
+
+            a_corpus --> the corpus, one progression per line
+
+    DESCRIPTION
+
+        trains a model with the default orders
+
+    RETURNS
+
+        the trained model
+     */
+    public static ChordModel Train( Reader a_corpus ) throws IOException
+    {
+        return Train( a_corpus, new ChordModel() );
+    }
+
+    /*
+    NAME
+
+        Train - trains an empty model on a progression corpus
+
+    SYNOPSIS
+
+        ChordModel Train( Reader a_corpus, ChordModel a_model )
+
+            a_corpus --> the corpus, one progression per line
+            a_model --> the empty model to train
+
+    DESCRIPTION
+
+        adds every progression in the corpus and ranks the model
+
+    RETURNS
+
+        the trained model
+     */
+    public static ChordModel Train( Reader a_corpus, ChordModel a_model ) throws IOException
+    {
+        BufferedReader reader = new BufferedReader( a_corpus );
+        String prog;
+        while ( ( prog = reader.readLine() ) != null )
+        {
+            a_model.AddProgression( prog );
+        }
+        a_model.Rank();
+        return a_model;
+    }
+
+    /*
+    NAME
+
+        AddProgression - counts the chords of one progression
+
+    SYNOPSIS
+
+        void AddProgression( CharSequence a_prog )
+
+            a_prog --> the progression as chord number digits, padded with 0s at both ends
+
+    DESCRIPTION
+
+        Converts the digits to chord numbers once by subtracting '0' and adds them.
+        Anything that is not a digit, like the carriage return of a Windows line, is
+            skipped the same way ModelTrainer skips it, so both count the same corpus alike.
+     */
+    public void AddProgression( CharSequence a_prog )
+    {
+        int[] chords = new int[ a_prog.length() ];
+        int length = 0;
+        for ( int i = 0; i < chords.length; i++ )
+        {
+            char c = a_prog.charAt( i );
+            if ( c >= '0' && c <= '9' )
+            {
+                chords[ length++ ] = c - '0';
+            }
+        }
+        AddProgression( chords, length );
+    }
+
+    /*
+    NAME
+
+        AddProgression - counts the chords of one progression
+
+    SYNOPSIS
+
+        void AddProgression( int[] a_chords )
+
+            a_chords --> chord numbers of the progression, 0 for no chord
+
+    DESCRIPTION
+
+        Scans the progression chord by chord and updates the weights of each table accordingly.
+        Positions past either end of the progression count as no chord.
+        Each chord costs one update per chord of context, so a ranked model
+            can keep learning without being rebuilt.
+     */
+    public void AddProgression( int[] a_chords )
+    {
+        AddProgression( a_chords, a_chords.length );
+    }
+
+    /*
+    NAME
+
+        AddProgression - counts the chords at the start of a buffer
+
+    SYNOPSIS
+
+        void AddProgression( int[] a_chords, int a_length )
+
+            a_chords --> chord numbers of the progression, 0 for no chord
+            a_length --> the number of chords used in the buffer
+
+    DESCRIPTION
+
+        lets a trainer reuse one buffer for every progression it reads
+     */
+    public void AddProgression( int[] a_chords, int a_length )
+    {
+        CheckNotFrozen();
+        for ( int i = 0; i < a_length; i++ )
+        {
+            if ( a_chords[ i ] != 0 )
+            {
+                // decrementing target chord converts it from chord number to chord index
+                m_end.Add( EndContext( a_chords, 0, i, m_end.GetOrder() ), a_chords[ i ] - 1 );
+                m_mid.Add( MidContext( a_chords, a_length, i, m_mid.GetOrder() ), a_chords[ i ] - 1 );
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        RemoveProgression - undoes AddProgression
+
+    SYNOPSIS
+
+        void RemoveProgression( int[] a_chords )
+
+            a_chords --> chord numbers of the progression, 0 for no chord
+
+    DESCRIPTION
+
+        takes the chords of a progression that was added back out of both tables,
+            used when a saved progression is edited
+     */
+    public void RemoveProgression( int[] a_chords )
+    {
+        CheckNotFrozen();
+        for ( int i = 0; i < a_chords.length; i++ )
+        {
+            if ( a_chords[ i ] != 0 )
+            {
+                m_end.Remove( EndContext( a_chords, 0, i, m_end.GetOrder() ), a_chords[ i ] - 1 );
+                m_mid.Remove( MidContext( a_chords, a_chords.length, i, m_mid.GetOrder() ), a_chords[ i ] - 1 );
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        Merge - adds the counts of another model to this one
+
+    SYNOPSIS
+
+        void Merge( ChordModel a_other )
+
+            a_other --> a model with the same orders
+
+    DESCRIPTION
+
+        used to combine models trained on separate parts of a corpus
+     */
+    public void Merge( ChordModel a_other )
+    {
+        CheckNotFrozen();
+        m_end.Merge( a_other.m_end );
+        m_mid.Merge( a_other.m_mid );
+    }
+
+    /*
+    NAME
+
+        GetMemorySize - estimates the memory used by the model
+
+    SYNOPSIS
+
+        long GetMemorySize()
+
+    DESCRIPTION
+
+        used to bound how many models are kept loaded.
+        an overlay only counts its own tables, not the base it shares.
+
+    RETURNS
+
+        the number of bytes in the arrays of both tables
+     */
+    public long GetMemorySize()
+    {
+        return m_end.GetMemorySize() + m_mid.GetMemorySize();
+    }
+
+    /*
+    NAME
+
+        Copy - copies the model
+
+    SYNOPSIS
+
+        ChordModel Copy()
+
+    DESCRIPTION
+
+        the copy is not frozen even if this model is, so it can be retrained
+            while this one keeps serving queries.
+        the copy of an overlay shares its base.
+
+    RETURNS
+
+        a model with its own copy of the counts and rankings
+     */
+    public ChordModel Copy()
+    {
+        return new ChordModel( m_end.Copy(), m_mid.Copy(), m_base );
+    }
+
+    /*
+    NAME
+
+        Freeze - stops the model from being changed
+
+    SYNOPSIS
+
+        void Freeze()
+
+    DESCRIPTION
+
+        called before the model is published to other threads.
+        training it after this throws IllegalStateException.
+     */
+    public void Freeze()
+    {
+        m_frozen = true;
+    }
+
+    /*
+    NAME
+
+        IsFrozen - tells if the model can still be changed
+
+    SYNOPSIS
+
+        boolean IsFrozen()
+
+    RETURNS
+
+        true once Freeze has been called
+     */
+    public boolean IsFrozen()
+    {
+        return m_frozen;
+    }
+
+    /*
+    NAME
+
+        GetEndOrder - gets the number of chords the end table looks at
+
+    SYNOPSIS
+
+        int GetEndOrder()
+
+    RETURNS
+
+        the order of the end table
+     */
+    public int GetEndOrder()
+    {
+        return m_end.GetOrder();
+    }
+
+    /*
+    NAME
+
+        GetMidOrder - gets the number of chords the mid table looks at
+
+    SYNOPSIS
+
+        int GetMidOrder()
+
+    RETURNS
+
+        the order of the mid table
+     */
+    public int GetMidOrder()
+    {
+        return m_mid.GetOrder();
+    }
+
+    /*
+    NAME
+
+        Rank - ranks the suggestions of every context
+
+    SYNOPSIS
+
+        void Rank()
+
+    DESCRIPTION
+
+        called once the counts are final
+     */
+    public void Rank()
+    {
+        CheckNotFrozen();
+        m_end.Rank();
+        m_mid.Rank();
+    }
+
+    /*
+    NAME
+
+        Smooth - smooths both tables and ranks them
+
+    SYNOPSIS
+
+        void Smooth( int a_method, float a_k )
+
+            a_method --> one of the CountTable.SMOOTH_ constants
+            a_k --> the amount added to every count by add-k, ignored otherwise
+
+    DESCRIPTION
+
+        called instead of Rank once the counts are final, so every observed context
+            ranks all the chords its shorter contexts make likely rather than
+            only the ones it saw. unobserved contexts back off to the longest one
+            observed, which is what smoothing would give them anyway.
+        the counts cannot be changed afterwards. an overlay cannot be smoothed.
+     */
+    public void Smooth( int a_method, float a_k )
+    {
+        CheckNotFrozen();
+        if ( m_base != null )
+        {
+            throw new IllegalStateException( "cannot smooth an overlay" );
+        }
+        m_end.Smooth( a_method, a_k );
+        m_mid.Smooth( a_method, a_k );
+    }
+
+    /*
+    NAME
+
+        Quantize - codes the probabilities of both tables in a few bits
+
+    SYNOPSIS
+
+        void Quantize( int a_bits )
+
+            a_bits --> 8 or 16, the size of each code
+
+    DESCRIPTION
+
+        called last, on a ranked or smoothed model, to ship it in a fraction of the memory.
+        suggestions are unchanged and distributions keep the order of their chords,
+            see CountTable. the model cannot be trained, ranked or smoothed afterwards.
+     */
+    public void Quantize( int a_bits )
+    {
+        CheckNotFrozen();
+        m_end.Quantize( a_bits );
+        m_mid.Quantize( a_bits );
+    }
+
+    /*
+    NAME
+
+        GetBits - gets the size of the codes of a quantized model
+
+    SYNOPSIS
+
+        int GetBits()
+
+    RETURNS
+
+        8 or 16 if the model is quantized, otherwise 0
+     */
+    public int GetBits()
+    {
+        return m_end.GetBits();
+    }
+
+    /*
+    NAME
+
+        GetEndSuggestions - gets the suggestions given previous chords
+
+    SYNOPSIS
+
+        int GetEndSuggestions( int[] a_chords, int a_start, int a_index, int[] a_out )
+
+            a_chords --> chord numbers of the progression, 0 for no chord
+            a_start --> where the progression starts in a_chords
+            a_index --> where the target is in a_chords
+            a_out --> receives the suggested chords as chord indices, must hold seven
+
+    DESCRIPTION
+
+        the context is as many chords before the target as the end table looks at,
+            chords before a_start count as no chord
+
+    RETURNS
+
+        the number of suggested chords written to a_out
+     */
+    public int GetEndSuggestions( int[] a_chords, int a_start, int a_index, int[] a_out )
+    {
+        return GetEndSuggestions( EndContext( a_chords, a_start, a_index, GetEndOrder() ), a_out, 0 );
+    }
+
+    /*
+    NAME
+
+        GetMidSuggestions - gets the suggestions given the surrounding chords
+
+    SYNOPSIS
+
+        int GetMidSuggestions( int[] a_chords, int a_length, int a_index, int[] a_out )
+
+            a_chords --> chord numbers of the progression, 0 for no chord
+            a_length --> the number of chords in the progression
+            a_index --> the index of the target
+            a_out --> receives the suggested chords as chord indices, must hold seven
+
+    DESCRIPTION
+
+        the context is as many chords around the target as the mid table looks at,
+            chords past either end count as no chord
+
+    RETURNS
+
+        the number of suggested chords written to a_out
+     */
+    public int GetMidSuggestions( int[] a_chords, int a_length, int a_index, int[] a_out )
+    {
+        return GetMidSuggestions( MidContext( a_chords, a_length, a_index, GetMidOrder() ), a_out, 0 );
+    }
+
+    /*
+    NAME
+
+        GetSuggestions - gets the suggestions for every chord of a progression
+
+    SYNOPSIS
+
+        void GetSuggestions( int[] a_chords, int a_length, int[] a_out, int[] a_counts )
+
+            a_chords --> chord numbers of the progression, 0 for no chord
+            a_length --> the number of chords in the progression
+            a_out --> receives the suggested chord indices, seven entries per chord,
+                        must hold a_length * 7
+            a_counts --> receives the number of suggestions for each chord, must hold a_length
+
+    DESCRIPTION
+
+        walks the progression once, packing each context straight from the chord numbers.
+        the last chord gets the end suggestions, every other chord the mid suggestions,
+            the same as asking GetSuggestions for each index.
+     */
+    public void GetSuggestions( int[] a_chords, int a_length, int[] a_out, int[] a_counts )
+    {
+        for ( int i = 0; i < a_length; i++ )
+        {
+            a_counts[ i ] = GetSuggestions( a_chords, a_length, i, a_out, i * CountTable.NUM_CHORDS );
+        }
+    }
+
+    /*
+    NAME
+
+        GetSuggestions - gets the suggestions for one chord of a progression
+
+    SYNOPSIS
+
+        int GetSuggestions( int[] a_chords, int a_length, int a_index, int[] a_out, int a_offset )
+
+            a_chords --> chord numbers of the progression, 0 for no chord
+            a_length --> the number of chords in the progression
+            a_index --> the index of the target
+            a_out --> receives the suggested chord indices
+            a_offset --> where in a_out to start writing, seven entries must fit after it
+
+    DESCRIPTION
+
+        the last chord gets the end suggestions, any other chord the mid suggestions
+
+    RETURNS
+
+        the number of suggested chords written to a_out
+     */
+    public int GetSuggestions( int[] a_chords, int a_length, int a_index, int[] a_out, int a_offset )
+    {
+        if ( a_index == a_length - 1 )
+        {
+            return GetEndSuggestions( EndContext( a_chords, 0, a_index, GetEndOrder() ), a_out, a_offset );
+        }
+        return GetMidSuggestions( MidContext( a_chords, a_length, a_index, GetMidOrder() ), a_out, a_offset );
+    }
+
+    /*
+    NAME
+
+        GetEndDistribution - gets the probability of each chord given previous chords
+
+    SYNOPSIS
+
+        void GetEndDistribution( int[] a_chords, int a_start, int a_index, float[] a_out )
+
+            a_chords --> chord numbers of the progression, 0 for no chord
+            a_start --> where the progression starts in a_chords
+            a_index --> where the target is in a_chords
+            a_out --> receives the probability of each chord index, must hold seven
+
+    DESCRIPTION
+
+        the context is as many chords before the target as the end table looks at,
+            chords before a_start count as no chord
+     */
+    public void GetEndDistribution( int[] a_chords, int a_start, int a_index, float[] a_out )
+    {
+        GetEndDistribution( EndContext( a_chords, a_start, a_index, GetEndOrder() ), GetEndOrder(), a_out );
+    }
+
+    /*
+    NAME
+
+        GetEndDistribution - gets the probability of each chord given the three previous chords
+
+    SYNOPSIS
+
+        void GetEndDistribution( int a_prev3, int a_prev2, int a_prev, float[] a_out )
+
+            a_prev3 --> the chord number 3 before the target chord
+            a_prev2 --> the chord number 2 before the target chord
+            a_prev --> the chord number before the target chord
+            a_out --> receives the probability of each chord index, must hold seven
+
+    DESCRIPTION
+
+        for callers that only know three chords before the target, like the states
+            of GapFiller. the chords before them are unknown, so a longer end table
+            answers from its contexts of three chords.
+     */
+    public void GetEndDistribution( int a_prev3, int a_prev2, int a_prev, float[] a_out )
+    {
+        GetEndDistribution( Pack( a_prev, 0 ) | Pack( a_prev2, 1 ) | Pack( a_prev3, 2 ), 3, a_out );
+    }
+
+    /*
+    NAME
+
+        GetTransitionDistribution - gets the probability of each chord given only the chord before it
+
+    SYNOPSIS
+
+        void GetTransitionDistribution( int a_prev, float[] a_out )
+
+            a_prev --> the chord number before the target chord, 0 for the start
+            a_out --> receives the probability of each chord index, must hold seven
+
+    DESCRIPTION
+
+        asks the end table with a context of one chord, the distribution the longer
+            contexts back off to
+     */
+    public void GetTransitionDistribution( int a_prev, float[] a_out )
+    {
+        GetEndDistribution( Pack( a_prev, 0 ), 1, a_out );
+    }
+
+    /*
+    NAME
+
+        GetMidDistribution - gets the probability of each chord given the surrounding chords
+
+    SYNOPSIS
+
+        void GetMidDistribution( int[] a_chords, int a_length, int a_index, float[] a_out )
+
+            a_chords --> chord numbers of the progression, 0 for no chord
+            a_length --> the number of chords in the progression
+            a_index --> the index of the target
+            a_out --> receives the probability of each chord index, must hold seven
+
+    DESCRIPTION
+
+        the context is as many chords around the target as the mid table looks at,
+            chords past either end count as no chord
+     */
+    public void GetMidDistribution( int[] a_chords, int a_length, int a_index, float[] a_out )
+    {
+        int context = MidContext( a_chords, a_length, a_index, GetMidOrder() );
+        if ( m_base != null )
+        {
+            m_base.m_mid.GetDistribution( m_mid, context, GetMidOrder(), a_out );
+            return;
+        }
+        m_mid.GetDistribution( context, GetMidOrder(), a_out );
+    }
+
+    /*
+    NAME
+
+        SampleEndChord - draws a chord to follow previous chords
+
+    SYNOPSIS
+
+        int SampleEndChord( int[] a_chords, int a_start, int a_index, Random a_random )
+
+            a_chords --> chord numbers of the progression, 0 for no chord
+            a_start --> where the progression starts in a_chords
+            a_index --> where the target is in a_chords
+            a_random --> the source of random numbers
+
+    DESCRIPTION
+
+        the context is as many chords before the target as the end table looks at,
+            chords before a_start count as no chord.
+        uses the alias table built when the model was ranked or quantized, so the
+            work does not depend on the counts. the model must have been ranked.
+
+    RETURNS
+
+        the chord index drawn
+     */
+    public int SampleEndChord( int[] a_chords, int a_start, int a_index, Random a_random )
+    {
+        int context = EndContext( a_chords, a_start, a_index, GetEndOrder() );
+        if ( m_base != null )
+        {
+            return m_base.m_end.Sample( m_end, context, GetEndOrder(), a_random );
+        }
+        return m_end.Sample( context, GetEndOrder(), a_random );
+    }
+
+    /*
+    NAME
+
+        SelectTop - sorts the most probable chords of a distribution to the front
+
+    SYNOPSIS
+
+        int SelectTop( float[] a_scores, int[] a_chords, int a_k )
+
+            a_scores --> holds the probability of each chord index,
+                            receives the probabilities of the chords in a_chords
+            a_chords --> receives the chord indices, most probable first, must hold seven
+            a_k --> the number of chords wanted
+
+    DESCRIPTION
+
+        selects in place, so a_scores and a_chords stay paired and nothing is allocated.
+        equal probabilities keep chord order.
+
+    RETURNS
+
+        the number of chords sorted to the front, a_k or seven if a_k is larger
+     */
+    public static int SelectTop( float[] a_scores, int[] a_chords, int a_k )
+    {
+        int k = Math.min( a_k, CountTable.NUM_CHORDS );
+        for ( int i = 0; i < CountTable.NUM_CHORDS; i++ )
+        {
+            a_chords[ i ] = i;
+        }
+        for ( int i = 0; i < k; i++ )
+        {
+            int best = i;
+            for ( int j = i + 1; j < CountTable.NUM_CHORDS; j++ )
+            {
+                if ( a_scores[ j ] > a_scores[ best ]
+                        || ( a_scores[ j ] == a_scores[ best ] && a_chords[ j ] < a_chords[ best ] ) )
+                {
+                    best = j;
+                }
+            }
+            float score = a_scores[ i ];
+            a_scores[ i ] = a_scores[ best ];
+            a_scores[ best ] = score;
+            int chord = a_chords[ i ];
+            a_chords[ i ] = a_chords[ best ];
+            a_chords[ best ] = chord;
+        }
+        return k;
+    }
+
+    /*
+    NAME
+
+        Read - reads a compiled model
+
+    SYNOPSIS
+
+        ChordModel Read( ByteBuffer a_buffer )
+
+            a_buffer --> the whole model file
+
+    DESCRIPTION
+
+        checks the header then reads both tables in bulk.
+        the tables are stored ranked so nothing is parsed or normalized.
+
+    RETURNS
+
+        the model
+     */
+    public static ChordModel Read( ByteBuffer a_buffer ) throws IOException
+    {
+        if ( a_buffer.getInt() != MAGIC )
+        {
+            throw new IOException( "not a compiled chord model" );
+        }
+        int version = a_buffer.getInt();
+        if ( version != VERSION )
+        {
+            throw new IOException( "chord model version " + version + ", expected " + VERSION );
+        }
+        NGramTable end = NGramTable.Read( a_buffer );
+        NGramTable mid = NGramTable.Read( a_buffer );
+        return new ChordModel( end, mid, null );
+    }
+
+    /*
+    NAME
+
+        Read - reads a compiled model file
+
+    SYNOPSIS
+
+        ChordModel Read( File a_file )
+
+            a_file --> the model file written by ModelCompiler
+
+    DESCRIPTION
+
+        reads the whole file in one read, used by the build time tools
+
+    RETURNS
+
+        the model
+     */
+    public static ChordModel Read( File a_file ) throws IOException
+    {
+        byte[] data = new byte[ (int) a_file.length() ];
+        DataInputStream in = new DataInputStream( new FileInputStream( a_file ) );
+        try
+        {
+            in.readFully( data );
+        }
+        finally
+        {
+            in.close();
+        }
+        return Read( ByteBuffer.wrap( data ) );
+    }
+
+    /*
+    NAME
+
+        Write - writes the compiled model
+
+    SYNOPSIS
+
+        void Write( OutputStream a_out )
+
+            a_out --> the stream to write to
+
+    DESCRIPTION
+
+        writes the header followed by the end and mid tables.
+        an overlay cannot be written, its counts mean nothing without its base.
+     */
+    public void Write( OutputStream a_out ) throws IOException
+    {
+        if ( m_base != null )
+        {
+            throw new IllegalStateException( "cannot write an overlay" );
+        }
+        DataOutputStream out = new DataOutputStream( a_out );
+        out.writeInt( MAGIC );
+        out.writeInt( VERSION );
+        m_end.Write( out );
+        m_mid.Write( out );
+        out.flush();
+    }
+
+    /*
+    NAME
+
+        GetEndSuggestions - gets the suggestions of a packed end context
+
+    SYNOPSIS
+
+        int GetEndSuggestions( int a_context, int[] a_out, int a_offset )
+
+            a_context --> the packed context, as long as the order of the end table
+            a_out --> receives the suggested chords as chord indices
+            a_offset --> where in a_out to start writing, seven entries must fit after it
+
+    RETURNS
+
+        the number of suggested chords written to a_out
+     */
+    private int GetEndSuggestions( int a_context, int[] a_out, int a_offset )
+    {
+        if ( m_base != null )
+        {
+            return m_base.m_end.GetSuggestions( m_end, a_context, GetEndOrder(), a_out, a_offset );
+        }
+        return m_end.GetSuggestions( a_context, GetEndOrder(), a_out, a_offset );
+    }
+
+    /*
+    NAME
+
+        GetMidSuggestions - gets the suggestions of a packed mid context
+
+    SYNOPSIS
+
+        int GetMidSuggestions( int a_context, int[] a_out, int a_offset )
+
+            a_context --> the packed context, as long as the order of the mid table
+            a_out --> receives the suggested chords as chord indices
+            a_offset --> where in a_out to start writing, seven entries must fit after it
+
+    RETURNS
+
+        the number of suggested chords written to a_out
+     */
+    private int GetMidSuggestions( int a_context, int[] a_out, int a_offset )
+    {
+        if ( m_base != null )
+        {
+            return m_base.m_mid.GetSuggestions( m_mid, a_context, GetMidOrder(), a_out, a_offset );
+        }
+        return m_mid.GetSuggestions( a_context, GetMidOrder(), a_out, a_offset );
+    }
+
+    /*
+    NAME
+
+        GetEndDistribution - gets the distribution of a packed end context
+
+    SYNOPSIS
+
+        void GetEndDistribution( int a_context, int a_length, float[] a_out )
+
+            a_context --> the packed context
+            a_length --> the number of chords known in the context
+            a_out --> receives the probability of each chord index, must hold seven
+     */
+    private void GetEndDistribution( int a_context, int a_length, float[] a_out )
+    {
+        if ( m_base != null )
+        {
+            m_base.m_end.GetDistribution( m_end, a_context, a_length, a_out );
+            return;
+        }
+        m_end.GetDistribution( a_context, a_length, a_out );
+    }
+
+    /*
+    NAME
+
+        EndContext - packs the chords before a target
+
+    SYNOPSIS
+
+        int EndContext( int[] a_chords, int a_start, int a_index, int a_order )
+
+            a_chords --> chord numbers of the progression, 0 for no chord
+            a_start --> where the progression starts in a_chords, chords before it count as no chord
+            a_index --> where the target is in a_chords
+            a_order --> the number of chords to pack
+
+    RETURNS
+
+        the packed context, nearest chord first
+     */
+    public static int EndContext( int[] a_chords, int a_start, int a_index, int a_order )
+    {
+        int context = 0;
+        for ( int i = 0; i < a_order && a_index - 1 - i >= a_start; i++ )
+        {
+            context |= Pack( a_chords[ a_index - 1 - i ], i );
+        }
+        return context;
+    }
+
+    /*
+    NAME
+
+        MidContext - packs the chords around a target
+
+    SYNOPSIS
+
+        int MidContext( int[] a_chords, int a_length, int a_index, int a_order )
+
+            a_chords --> chord numbers of the progression, 0 for no chord
+            a_length --> the number of chords in the progression
+            a_index --> the index of the target
+            a_order --> the number of chords to pack
+
+    DESCRIPTION
+
+        alternates between the chords before and after the target,
+            starting with the one just before it
+
+    RETURNS
+
+        the packed context, nearest chords first
+     */
+    public static int MidContext( int[] a_chords, int a_length, int a_index, int a_order )
+    {
+        int context = 0;
+        for ( int i = 0; i < a_order; i++ )
+        {
+            int distance = i / 2 + 1;
+            int index = i % 2 == 0 ? a_index - distance : a_index + distance;
+            context |= Pack( ChordAt( a_chords, a_length, index ), i );
+        }
+        return context;
+    }
+
+    /*
+    NAME
+
+        ChordAt - gets a chord number of a progression
+
+    SYNOPSIS
+
+        int ChordAt( int[] a_chords, int a_length, int a_index )
+
+            a_chords --> chord numbers of the progression
+            a_length --> the number of chords in the progression
+            a_index --> the index, may be outside the progression
+
+    RETURNS
+
+        the chord number, or 0 outside the progression
+     */
+    private static int ChordAt( int[] a_chords, int a_length, int a_index )
+    {
+        return a_index < 0 || a_index >= a_length ? 0 : a_chords[ a_index ];
+    }
+
+    /*
+    NAME
+
+        CheckNotFrozen - makes sure the model can be changed
+
+    SYNOPSIS
+
+        void CheckNotFrozen()
+
+    DESCRIPTION
+
+        throws IllegalStateException if the model has been published
+     */
+    private void CheckNotFrozen()
+    {
+        if ( m_frozen )
+        {
+            throw new IllegalStateException( "a published model cannot be changed, retrain a copy" );
+        }
+    }
+
+    /*
+    NAME
+
+        Pack - shifts a chord number to its place in a packed context
+
+    SYNOPSIS
+
+        int Pack( int a_chord, int a_position )
+
+            a_chord --> the chord number, 0 to 7
+            a_position --> 0 for the chord nearest the target
+
+    RETURNS
+
+        the chord number in its bits of the context
+     */
+    private static int Pack( int a_chord, int a_position )
+    {
+        return a_chord << ( a_position * NGramTable.BITS_PER_CHORD );
+    }
+}
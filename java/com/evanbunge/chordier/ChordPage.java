@@ -7,12 +7,13 @@ import android.support.v7.widget.Toolbar;
 import android.view.Gravity;
 import android.view.Menu;
 import android.view.MenuItem;
+import android.view.SubMenu;
 import android.view.View;
 import android.widget.EditText;
 import android.widget.PopupWindow;
 import android.widget.TextView;
+import android.widget.Toast;
 
-import java.util.ArrayList;
 import java.util.List;
 
 /*
@@ -81,17 +82,15 @@ public class ChordPage extends AppCompatActivity
             FileHandler fh = new FileHandler( this );
             ChordUtil util = fh.LoadChordFile( filename );
             m_selector = new ChordSelector( this, util );
-            List<String> prog = new ArrayList<>();
-            prog.addAll( util.GetProgression() );
-            for ( String chord : prog )
+            for ( int i = 0; i < util.GetLength(); i++ )
             {
-                m_selector.Create( chord );
+                m_selector.Create( util.GetChord( i ) );
             }
         }
         else
         {
             String key = chordListSetup.getStringExtra( "key" );
-            ChordUtil util = new ChordUtil( key );
+            ChordUtil util = new ChordUtil( ChordierApp.GetModels( this ).GetCurrent(), key );
             m_selector = new ChordSelector( this, util );
 
             m_selector.Create();
@@ -114,6 +113,8 @@ public class ChordPage extends AppCompatActivity
     DESCRIPTION
 
         inflates menu with items from the resource file
+        adds an item for each genre to the style menu and checks the current one
+        adds an item for each shift to the transpose menu, its id is the shift plus an octave
 
     RETURNS
 
@@ -124,6 +125,27 @@ public class ChordPage extends AppCompatActivity
     {
         // Inflate the menu; this adds items to the action bar if it is present.
         getMenuInflater().inflate( R.menu.chord_menu, a_menu );
+
+        ModelRegistry models = ChordierApp.GetModels( this );
+        SubMenu genres = a_menu.findItem( R.id.action_genre )
+                               .getSubMenu();
+        List<String> names = models.GetGenres();
+        for ( int i = 0; i < names.size(); i++ )
+        {
+            genres.add( R.id.genre_group, Menu.NONE, i, names.get( i ) )
+                  .setChecked( names.get( i ).equals( models.GetCurrentGenre() ) );
+        }
+        genres.setGroupCheckable( R.id.genre_group, true, true );
+
+        SubMenu shifts = a_menu.findItem( R.id.action_transpose )
+                               .getSubMenu();
+        for ( int shift = Transposer.MAX_SHIFT; shift >= Transposer.MIN_SHIFT; shift-- )
+        {
+            if ( shift != 0 )
+            {
+                shifts.add( R.id.transpose_group, shift + Transposer.OCTAVE, Menu.NONE, Transposer.DescribeShift( shift ) );
+            }
+        }
         return true;
     }
 
@@ -141,6 +163,9 @@ public class ChordPage extends AppCompatActivity
     DESCRIPTION
 
         checks the ID and launches the appropriate prompt
+        a genre item switches the suggestions to that genre's model
+        a transpose item moves the progression to the key that many semitones away
+        the fill item fills the chord being edited with the one that fits best between its neighbours
 
     RETURNS
 
@@ -149,12 +174,45 @@ public class ChordPage extends AppCompatActivity
     @Override
     public boolean onOptionsItemSelected( MenuItem a_item )
     {
+        if ( a_item.getGroupId() == R.id.genre_group )
+        {
+            a_item.setChecked( true );
+            ModelHandle model = ChordierApp.GetModels( this )
+                                          .SetCurrent( a_item.getTitle().toString() );
+            m_selector.SetModel( model );
+            return true;
+        }
+        if ( a_item.getGroupId() == R.id.transpose_group )
+        {
+            if ( m_selector.IsEditing() )
+            {
+                Toast.makeText( this, "Cannot transpose while editing a chord.", Toast.LENGTH_SHORT )
+                     .show();
+                return true;
+            }
+            ChordUtil util = m_selector.GetUtil();
+            util.Transpose( Transposer.Shift( util.GetKey(), a_item.getItemId() - Transposer.OCTAVE ) );
+            m_selector.Refresh();
+            return true;
+        }
         switch ( a_item.getItemId() )
         {
             case R.id.action_save:
                 savePrompt();
                 return true;
 
+            case R.id.action_fill:
+                if ( m_selector.IsEditing() )
+                {
+                    m_selector.FillEditing();
+                }
+                else
+                {
+                    Toast.makeText( this, "Add or change a chord to fill it.", Toast.LENGTH_SHORT )
+                         .show();
+                }
+                return true;
+
             case R.id.action_info:
                 ShowInfo();
                 return true;
@@ -32,6 +32,20 @@ public class ChordSelector
     private boolean m_editFlag;
     // list of all created selectors in order
     private List<ViewGroup> m_selectorReference;
+    // reused buffer for the chord numbers offered by a selector
+    private int[] m_options;
+    // suggestions for every index, seven per index, fetched once per edit of the progression
+    private int[] m_suggestions;
+    private int[] m_suggestionCounts;
+    // tells if the progression or model changed since the suggestions were fetched
+    private boolean m_suggestionsStale;
+    // the model the suggestions were fetched from, a new one is published when it is retrained or reloaded
+    private ChordModel m_suggestionsModel;
+    // the selector that is editing, null if none
+    private ViewGroup m_editingSelector;
+    // reused buffers for the filled progression and the probability of each chord at each index
+    private int[] m_filled;
+    private float[] m_marginals;
 
     /*
     NAME
@@ -46,39 +60,22 @@ public class ChordSelector
 
     DESCRIPTION
 
-        get the chord name from the buttons text.
+        get the chord number from the buttons tag.
         get the selector by going up the chain of parent views.
-        edit the progression in the utility class.
-        change views to the display state.
-        unset edit flag.
+        select the chord in that selector.
      */
     private View.OnClickListener selectionListener = new View.OnClickListener()
     {
         @Override
         public void onClick( View a_view )
         {
-            String choice = (String) ( (Button) a_view ).getText();
+            int choice = (Integer) a_view.getTag();
 
             ViewGroup selector = (ViewGroup) a_view.getParent()
                                                    .getParent()
                                                    .getParent();
 
-            m_chordUtil.Edit( m_selectorReference.indexOf( selector ), choice );
-
-            selector.getChildAt( 0 )
-                    .setVisibility( View.GONE );
-
-            TextView display = (TextView) selector.getChildAt( 1 );
-            display.setVisibility( View.VISIBLE );
-            display.setText( choice );
-
-            selector.getChildAt( 2 )
-                    .setVisibility( View.VISIBLE );
-
-            selector.getChildAt( 3 )
-                    .setVisibility( View.VISIBLE );
-
-            UnsetEditFlag();
+            Select( selector, choice );
         }
     };
 
@@ -115,6 +112,7 @@ public class ChordSelector
                 m_chordUtil.Delete(
                         m_selectorReference.indexOf( selector )
                 );
+                m_suggestionsStale = true;
 
                 m_selectorReference.remove( selector );
                 ( (ViewGroup) selector.getParent() ).removeView( selector );
@@ -154,6 +152,7 @@ public class ChordSelector
                 SetEditFlag();
 
                 ViewGroup selector = (ViewGroup) view.getParent();
+                m_editingSelector = selector;
                 selector.getChildAt( 1 )
                         .setVisibility( View.GONE );
                 selector.getChildAt( 2 )
@@ -193,6 +192,12 @@ public class ChordSelector
         m_currentActivity = a_activity;
         m_chordUtil = a_chordUtil;
         m_selectorReference = new ArrayList<>();
+        m_options = new int[ CountTable.NUM_CHORDS ];
+        m_suggestions = new int[ 0 ];
+        m_suggestionCounts = new int[ 0 ];
+        m_suggestionsStale = true;
+        m_filled = new int[ 0 ];
+        m_marginals = new float[ 0 ];
         m_editFlag = false;
     }
 
@@ -226,6 +231,7 @@ public class ChordSelector
         selector.setGravity( Gravity.CENTER );
         selector.setPadding( 10, 0, 10, 0 );
         m_selectorReference.add( selector );
+        m_editingSelector = selector;
         selectionArea.addView( selector, selectionArea.getChildCount() - 1 );
 
         ScrollView scrView = new ScrollView( m_currentActivity );
@@ -257,7 +263,8 @@ public class ChordSelector
         delete.setOnClickListener( deleteListener );
         selector.addView( delete );
 
-        m_chordUtil.Add( "" );
+        m_chordUtil.Add( 0 );
+        m_suggestionsStale = true;
         Populate( chordBox );
         SetEditFlag();
     }
@@ -269,9 +276,9 @@ public class ChordSelector
 
     SYNOPSIS
 
-        void Create( String a_chord )
+        void Create( int a_chord )
 
-            a_chord --> the chord to set
+            a_chord --> the chord number to set
 
     DESCRIPTION
 
@@ -281,7 +288,7 @@ public class ChordSelector
         deletes the placeholder made in Create()
         unsets the editflag
      */
-    public void Create( String a_chord )
+    public void Create( int a_chord )
     {
         Create();
 
@@ -298,13 +305,121 @@ public class ChordSelector
 
         TextView tv = (TextView) selector.getChildAt( 1 );
         tv.setVisibility( View.VISIBLE );
-        tv.setText( a_chord );
+        tv.setText( m_chordUtil.GetChordName( a_chord ) );
 
         m_chordUtil.DeleteEnd();
+        m_suggestionsStale = true;
 
         UnsetEditFlag();
     }
 
+    /*
+    NAME
+
+        Select - chooses the chord of a selector
+
+    SYNOPSIS
+
+        void Select( ViewGroup a_selector, int a_chord )
+
+            a_selector --> the selector that is editing
+            a_chord --> the chord number chosen
+
+    DESCRIPTION
+
+        edit the progression in the utility class.
+        change views to the display state.
+        unset edit flag.
+     */
+    private void Select( ViewGroup a_selector, int a_chord )
+    {
+        m_chordUtil.Edit( m_selectorReference.indexOf( a_selector ), a_chord );
+        m_suggestionsStale = true;
+
+        a_selector.getChildAt( 0 )
+                  .setVisibility( View.GONE );
+
+        TextView display = (TextView) a_selector.getChildAt( 1 );
+        display.setVisibility( View.VISIBLE );
+        display.setText( m_chordUtil.GetChordName( a_chord ) );
+
+        a_selector.getChildAt( 2 )
+                  .setVisibility( View.VISIBLE );
+
+        a_selector.getChildAt( 3 )
+                  .setVisibility( View.VISIBLE );
+
+        UnsetEditFlag();
+    }
+
+    /*
+    NAME
+
+        FillEditing - fills the editing selector with the chord that fits best
+
+    SYNOPSIS
+
+        void FillEditing()
+
+    DESCRIPTION
+
+        treats the chord being edited as a blank and fills it with GapFiller through
+            the utility class, so it fits the chords on both sides of it.
+        selects the filled chord and tells the user how likely it is there.
+        a selector must be editing. if the model is still loading nothing changes.
+     */
+    public void FillEditing()
+    {
+        int index = m_selectorReference.indexOf( m_editingSelector );
+        int length = m_chordUtil.GetLength();
+        if ( m_filled.length < length )
+        {
+            m_filled = new int[ length * 2 ];
+            m_marginals = new float[ length * 2 * CountTable.NUM_CHORDS ];
+        }
+
+        int old = m_chordUtil.GetChord( index );
+        m_chordUtil.Edit( index, 0 );
+        if ( ! m_chordUtil.FillBlanks( m_filled, m_marginals ) )
+        {
+            // the edited chord is put back, so the suggestions still hold
+            m_chordUtil.Edit( index, old );
+            Toast.makeText( m_currentActivity, "The style is still loading.", Toast.LENGTH_SHORT )
+                 .show();
+            return;
+        }
+
+        int chord = m_filled[ index ];
+        Select( m_editingSelector, chord );
+        int percent = Math.round( 100 * m_marginals[ index * CountTable.NUM_CHORDS + chord - 1 ] );
+        Toast.makeText( m_currentActivity, m_chordUtil.GetChordName( chord ) + " fits here " + percent + "% of the time.",
+                        Toast.LENGTH_SHORT )
+             .show();
+    }
+
+    /*
+    NAME
+
+        Refresh - shows the names of the chords again
+
+    SYNOPSIS
+
+        void Refresh()
+
+    DESCRIPTION
+
+        sets the text of every selector to the name of its chord in the current key,
+            used after the progression is transposed. no selector may be editing.
+     */
+    public void Refresh()
+    {
+        for ( int i = 0; i < m_selectorReference.size(); i++ )
+        {
+            ( (TextView) m_selectorReference.get( i ).getChildAt( 1 ) ).setText(
+                    m_chordUtil.GetChordName( m_chordUtil.GetChord( i ) ) );
+        }
+    }
+
     /*
     NAME
 
@@ -319,25 +434,33 @@ public class ChordSelector
     DESCRIPTION
 
         checks the toggle button and adds all chords or suggests best chords accordingly
-        adds a button for each chord to the scroll list
+        suggestions are fetched for every index at once after the progression changes,
+            and served from that buffer until it changes again
+        adds a button for each chord to the scroll list, named for the key and tagged with its chord number
      */
     private void Populate( ViewGroup a_vGroup )
     {
-        List<String> chordOptions;
+        int numOptions;
         if ( ( (ToggleButton) m_currentActivity.findViewById( R.id.suggest ) ).isChecked() )
         {
-            chordOptions = m_chordUtil.GetSuggestedChordsFor(
-                    m_selectorReference.indexOf( a_vGroup.getParent().getParent() )
-            );
+            FetchSuggestions();
+            int index = m_selectorReference.indexOf( a_vGroup.getParent().getParent() );
+            numOptions = m_suggestionCounts[ index ];
+            System.arraycopy( m_suggestions, index * CountTable.NUM_CHORDS, m_options, 0, numOptions );
         }
         else
         {
-            chordOptions = m_chordUtil.GetAllChords();
+            numOptions = CountTable.NUM_CHORDS;
+            for ( int i = 0; i < numOptions; i++ )
+            {
+                m_options[ i ] = i + 1;
+            }
         }
-        for ( String chord : chordOptions )
+        for ( int i = 0; i < numOptions; i++ )
         {
             Button butt = new Button( m_currentActivity );
-            butt.setText( chord );
+            butt.setText( m_chordUtil.GetChordName( m_options[ i ] ) );
+            butt.setTag( m_options[ i ] );
             butt.setTextAppearance( R.style.fancyTextStyle );
             butt.setBackgroundColor( Color.TRANSPARENT );
             a_vGroup.addView( butt );
@@ -345,6 +468,59 @@ public class ChordSelector
         }
     }
 
+    /*
+    NAME
+
+        FetchSuggestions - fetches the suggestions for every index if they are stale
+
+    SYNOPSIS
+
+        void FetchSuggestions()
+
+    DESCRIPTION
+
+        grows the buffers to the progression and fills them in one pass through the utility class.
+        suggestions made while the model is loading stay stale, so the model's are fetched once it is ready.
+            the same goes for suggestions from a model that has since been retrained, reloaded or replaced.
+     */
+    private void FetchSuggestions()
+    {
+        ChordModel model = m_chordUtil.GetModel();
+        if ( ! m_suggestionsStale && model == m_suggestionsModel )
+        {
+            return;
+        }
+        m_suggestionsModel = model;
+        int length = m_chordUtil.GetLength();
+        if ( m_suggestionCounts.length < length )
+        {
+            m_suggestions = new int[ length * 2 * CountTable.NUM_CHORDS ];
+            m_suggestionCounts = new int[ length * 2 ];
+        }
+        m_suggestionsStale = ! m_chordUtil.GetAllSuggestedChords( m_suggestions, m_suggestionCounts );
+    }
+
+    /*
+    NAME
+
+        SetModel - switches the model suggestions come from
+
+    SYNOPSIS
+
+        void SetModel( ModelHandle a_modelHandle )
+
+            a_modelHandle --> handle of the model to use
+
+    DESCRIPTION
+
+        sets the model of the utility class and fetches the suggestions again the next time
+     */
+    public void SetModel( ModelHandle a_modelHandle )
+    {
+        m_chordUtil.SetModel( a_modelHandle );
+        m_suggestionsStale = true;
+    }
+
     /*
     NAME
 
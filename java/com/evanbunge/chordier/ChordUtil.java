@@ -3,18 +3,31 @@ package com.evanbunge.chordier;
 
 import android.util.Log;
 
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /*
 ChordUtil
     Provides the functional logic to build chord progressions
+    the progression is kept as chord numbers, 1 to 7 for the chords of the key
+    and 0 for a chord not chosen yet, the same numbers the model is asked with.
+    chord names are only made for the screen and the saved file.
  */
 public class ChordUtil
 {
+    // the progression starts with room for this many chords and doubles when full
+    private static final int INITIAL_CAPACITY = 16;
+
     private ChordList m_chordList;
-    private List<String> m_progression;
+    // chord numbers of the progression, only the first m_length are used
+    private int[] m_chords;
+    private int m_length;
     private String m_key;
+    // the model of the chosen genre, asked for every suggestion
+    private ModelHandle m_modelHandle;
+    // fills blanks from the model it was made for, kept so its tables are reused
+    private GapFiller m_gapFiller;
+    private ChordModel m_fillerModel;
 
     /*
     NAME
@@ -23,18 +36,21 @@ public class ChordUtil
 
     SYNOPSIS
 
-        ChordUtil( String a_key )
+        ChordUtil( ModelHandle a_modelHandle, String a_key )
 
+            a_modelHandle --> the model to suggest chords from
             a_key --> the key to build the progression in
 
     DESCRIPTION
 
         initializes the member variables
      */
-    public ChordUtil( String a_key )
+    public ChordUtil( ModelHandle a_modelHandle, String a_key )
     {
-        m_chordList = new ChordList( a_key );
-        m_progression = new ArrayList<>();
+        m_modelHandle = a_modelHandle;
+        m_chordList = ChordList.Get( a_key );
+        m_chords = new int[ INITIAL_CAPACITY ];
+        m_length = 0;
         m_key = a_key;
     }
 
@@ -45,20 +61,22 @@ public class ChordUtil
 
     SYNOPSIS
 
-        ChordUtil( String a_key, List<String> a_progression )
+        ChordUtil( ModelHandle a_modelHandle, String a_key, int[] a_chords )
 
+            a_modelHandle --> the model to suggest chords from
             a_key --> the key to build the progression in
-            a_progression --> the pre-existing progression
+            a_chords --> chord numbers of the pre-existing progression
 
     DESCRIPTION
 
         calls other constructor to initialize the member variables
-        copies the progression to the member variable list
+        copies the progression to the member variable array
      */
-    public ChordUtil( String a_key, List<String> a_progression )
+    public ChordUtil( ModelHandle a_modelHandle, String a_key, int[] a_chords )
     {
-        this( a_key );
-        m_progression.addAll( a_progression );
+        this( a_modelHandle, a_key );
+        m_chords = Arrays.copyOf( a_chords, Math.max( a_chords.length, INITIAL_CAPACITY ) );
+        m_length = a_chords.length;
     }
 
     /*
@@ -82,19 +100,125 @@ public class ChordUtil
     /*
     NAME
 
-        GetProgression - gets the current progression
+        Transpose - moves the progression to another key
+
+    SYNOPSIS
+
+        void Transpose( String a_key )
+
+            a_key --> the key to move to
+
+    DESCRIPTION
+
+        maps every chord number with Transposer in place and names the chords
+            from the new key from now on
+     */
+    public void Transpose( String a_key )
+    {
+        Transposer.Transpose( m_chords, m_length, m_key, a_key, m_chords );
+        m_chordList = ChordList.Get( a_key );
+        m_key = a_key;
+    }
+
+    /*
+    NAME
+
+        SetModel - changes the model chords are suggested from
+
+    SYNOPSIS
+
+        void SetModel( ModelHandle a_modelHandle )
+
+            a_modelHandle --> the model of the newly chosen genre
+
+    DESCRIPTION
+
+        the next suggestions come from the new model, the progression is kept
+     */
+    public void SetModel( ModelHandle a_modelHandle )
+    {
+        m_modelHandle = a_modelHandle;
+    }
+
+    /*
+    NAME
+
+        GetModel - gets the model chords are suggested from right now
+
+    SYNOPSIS
+
+        ChordModel GetModel()
+
+    DESCRIPTION
+
+        a retrain or reload publishes a new model, so a caller that keeps
+            suggestions can tell they came from an older one
+
+    RETURNS
+
+        the current model, or null while it is loading
+     */
+    public ChordModel GetModel()
+    {
+        return m_modelHandle.GetModel();
+    }
+
+    /*
+    NAME
+
+        GetLength - gets the number of chords in the progression
+
+    SYNOPSIS
+
+        int GetLength()
+
+    RETURNS
+
+        the number of chords, including the ones not chosen yet
+     */
+    public int GetLength()
+    {
+        return m_length;
+    }
+
+    /*
+    NAME
+
+        GetChord - gets a chord of the progression
+
+    SYNOPSIS
+
+        int GetChord( int a_index )
+
+            a_index --> the index of the chord in the progression
+
+    RETURNS
+
+        the chord number 1 to 7, 0 for no chord
+     */
+    public int GetChord( int a_index )
+    {
+        return m_chords[ a_index ];
+    }
+
+    /*
+    NAME
+
+        GetChordName - gets the name of a chord number in the key
 
     SYNOPSIS
 
-        List<String> GetProgression()
+        String GetChordName( int a_chord )
+
+            a_chord --> the chord number 1 to 7, 0 for no chord
 
     RETURNS
 
-        the progression as a list of strings
+        the name of the chord, empty for no chord
      */
-    public List<String> GetProgression()
+    public String GetChordName( int a_chord )
     {
-        return m_progression;
+        return a_chord == 0 ? "" : m_chordList.GetChord( a_chord - 1 );
     }
 
     /*
@@ -104,18 +228,18 @@ public class ChordUtil
 
     SYNOPSIS
 
-        void Edit( int a_index, String a_newChord )
+        void Edit( int a_index, int a_newChord )
 
             a_index --> the index of the chord to change
-            a_newChord --> the new chord to set that index to
+            a_newChord --> the chord number to set that index to
 
     DESCRIPTION
 
         writes the new chord to the index
      */
-    public void Edit( int a_index, String a_newChord )
+    public void Edit( int a_index, int a_newChord )
     {
-        m_progression.set( a_index, a_newChord );
+        m_chords[ a_index ] = a_newChord;
     }
 
     /*
@@ -125,17 +249,21 @@ public class ChordUtil
 
     SYNOPSIS
 
-        void Add( String a_chord )
+        void Add( int a_chord )
 
-            a_chord --> the chord to add
+            a_chord --> the chord number to add, 0 for a chord not chosen yet
 
     DESCRIPTION
 
-        adds new chord to the end
+        adds new chord to the end, doubling the array if it is full
      */
-    public void Add( String a_chord )
+    public void Add( int a_chord )
     {
-        m_progression.add( a_chord );
+        if ( m_length == m_chords.length )
+        {
+            m_chords = Arrays.copyOf( m_chords, m_chords.length * 2 );
+        }
+        m_chords[ m_length++ ] = a_chord;
     }
 
     /*
@@ -151,11 +279,12 @@ public class ChordUtil
 
     DESCRIPTION
 
-        deletes the chord at the given index
+        deletes the chord at the given index and moves the later chords back one
      */
     public void Delete( int a_index )
     {
-        m_progression.remove( a_index );
+        System.arraycopy( m_chords, a_index + 1, m_chords, a_index, m_length - a_index - 1 );
+        m_length--;
     }
 
     /*
@@ -173,7 +302,25 @@ public class ChordUtil
      */
     public void DeleteEnd()
     {
-        m_progression.remove( m_progression.size() - 1 );
+        m_length--;
+    }
+
+    /*
+    NAME
+
+        GetChordNumbers - gets a copy of the progression
+
+    SYNOPSIS
+
+        int[] GetChordNumbers()
+
+    RETURNS
+
+        the chord numbers 1 to 7 of the progression, 0 for no chord
+     */
+    public int[] GetChordNumbers()
+    {
+        return Arrays.copyOf( m_chords, m_length );
     }
 
     /*
@@ -202,46 +349,109 @@ public class ChordUtil
 
     SYNOPSIS
 
-        List<String> GetSuggestedChordsFor( int a_index )
+        int GetSuggestedChordsFor( int a_index, int[] a_out )
 
             a_index --> the index to suggest chords for
+            a_out --> receives the suggested chord numbers, must hold seven
 
     DESCRIPTION
 
-        if index is at the end, finds previous three chords to make suggestions
-        if index is in the middle, finds the previous two and next two chords to make suggestions
-        converts the chord numbers suggested to the proper chord names
+        if index is at the end, the chords before it make the suggestions
+        if index is in the middle, the chords on both sides of it make the suggestions
+        the model looks at as many chords as it was trained on. nothing is allocated
 
     RETURNS
 
-        a list of the best chords for that spot in the progression
+        the number of suggested chords written to a_out, best first
      */
-    public List<String> GetSuggestedChordsFor( int a_index )
+    public int GetSuggestedChordsFor( int a_index, int[] a_out )
     {
-        int prev2 = a_index - 2 < 0 ? - 1 : m_chordList.GetChordIndex( m_progression.get( a_index - 2 ) );
-        int prev1 = a_index - 1 < 0 ? - 1 : m_chordList.GetChordIndex( m_progression.get( a_index - 1 ) );
+        int numSuggestions = MCMatrix.GetChordIndices( m_modelHandle.GetModel(), m_chords, m_length, a_index, a_out );
+        // converts the chord indices to chord numbers
+        for ( int i = 0; i < numSuggestions; i++ )
+        {
+            a_out[ i ]++;
+        }
+        return numSuggestions;
+    }
+
+    /*
+    NAME
+
+        FillBlanks - fills every blank chord of the progression
+
+    SYNOPSIS
+
+        boolean FillBlanks( int[] a_out, float[] a_marginals )
+
+            a_out --> receives the chord numbers with every blank filled, must hold the length
+            a_marginals --> receives the probability of each chord index at each index,
+                            seven per chord, or null if not wanted
+
+    DESCRIPTION
+
+        fills all the blanks together with GapFiller, so each blank fits the chords
+            on both sides of it. the progression itself is not changed.
+        the filler is kept until the model changes, so its tables are reused.
+
+    RETURNS
 
-        List<Integer> chordIndices;
-        // checks if index is at end
-        if ( a_index == m_progression.size() - 1 )
+        false if the model is not loaded yet, then nothing is written
+     */
+    public boolean FillBlanks( int[] a_out, float[] a_marginals )
+    {
+        ChordModel model = m_modelHandle.GetModel();
+        if ( model == null )
         {
-            int prev3 = a_index - 3 < 0 ? - 1 : m_chordList.GetChordIndex( m_progression.get( a_index - 3 ) );
-            chordIndices = MCMatrix.GetChordIndices( prev3, prev2, prev1 );
+            return false;
         }
-        else
+        if ( model != m_fillerModel )
         {
-            int next1 = m_chordList.GetChordIndex( m_progression.get( a_index + 1 ) );
-            int next2 = a_index + 2 >= m_progression.size() ? - 1 : m_chordList.GetChordIndex( m_progression.get( a_index + 2 ) );
-            chordIndices = MCMatrix.GetChordIndices( prev2, prev1, next1, next2 );
+            m_gapFiller = new GapFiller( model );
+            m_fillerModel = model;
         }
-        // adds suggested chords to the list
-        List<String> suggestedChords = new ArrayList<>();
-        for ( int index : chordIndices )
+        m_gapFiller.Fill( m_chords, m_length, a_out, a_marginals );
+        return true;
+    }
+
+    /*
+    NAME
+
+        GetAllSuggestedChords - gets the best chords for every index
+
+    SYNOPSIS
+
+        boolean GetAllSuggestedChords( int[] a_out, int[] a_counts )
+
+            a_out --> receives the suggested chord numbers, seven entries per chord
+            a_counts --> receives the number of suggestions for each chord
+
+    DESCRIPTION
+
+        asks MCMatrix for every index in one pass, so suggestions can be fetched
+            before they are shown
+        for each index of the progression, the same chords GetSuggestedChordsFor returns.
+            only the first a_counts[ i ] entries of index i are written.
+
+    RETURNS
+
+        true if the suggestions came from the model, false if it is still loading
+            and they are the fallback
+     */
+    public boolean GetAllSuggestedChords( int[] a_out, int[] a_counts )
+    {
+        ChordModel model = m_modelHandle.GetModel();
+        MCMatrix.GetAllChordIndices( model, m_chords, m_length, a_out, a_counts );
+        for ( int i = 0; i < m_length; i++ )
         {
-            suggestedChords.add( m_chordList.GetChord( index ) );
+            int offset = i * CountTable.NUM_CHORDS;
+            for ( int j = 0; j < a_counts[ i ]; j++ )
+            {
+                a_out[ offset + j ]++;
+            }
         }
-        return suggestedChords;
+        return model != null;
     }
 
 
-}
+}
\ No newline at end of file
@@ -0,0 +1,56 @@
+package com.evanbunge.chordier;
+
+import android.app.Activity;
+import android.app.Application;
+
+/*
+ChordierApp
+    holds what lives as long as the app: the registry of chord models.
+    it starts loading the model of the current genre before any activity
+    is created, including an activity being restored.
+ */
+public class ChordierApp extends Application
+{
+    private ModelRegistry m_models;
+
+    /*
+    NAME
+
+        onCreate - sets up the app
+
+    SYNOPSIS
+
+        void onCreate()
+
+    DESCRIPTION
+
+        creates the model registry and starts loading the current genre in the background
+     */
+    @Override
+    public void onCreate()
+    {
+        super.onCreate();
+        m_models = new ModelRegistry( this, ModelRegistry.DEFAULT_CACHE_BYTES );
+        m_models.GetCurrent();
+    }
+
+    /*
+    NAME
+
+        GetModels - gets the model registry of the app
+
+    SYNOPSIS
+
+        ModelRegistry GetModels( Activity a_activity )
+
+            a_activity --> any activity of the app
+
+    RETURNS
+
+        the registry
+     */
+    public static ModelRegistry GetModels( Activity a_activity )
+    {
+        return ( (ChordierApp) a_activity.getApplication() ).m_models;
+    }
+}
@@ -0,0 +1,1975 @@
+package com.evanbunge.chordier;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+CountTable
+    sparse table of chord counts keyed by a packed context.
+    contexts are stored in an open-addressed hash table so only contexts that
+    were actually observed take up memory. the counts of every context live in
+    one flat int array, seven columns per slot.
+    once ranked, each slot also holds its list of suggested chords so that
+    queries do not have to scan or compare the counts, and an alias table
+    so a chord can be drawn from its counts with two random numbers.
+    a slot can point to a backoff slot, a shorter context whose suggestions
+    fill in when the slot itself has too few observations.
+    a table can be smoothed once its counts are final. each slot then also
+    holds probabilities that mix in its backoff context, and its ranking,
+    alias table and distribution come from those instead of the raw counts.
+    a ranked table can be quantized to ship it in less memory. its counts
+    and probabilities are replaced by log probabilities of one or two bytes
+    per chord, see Quantizer, and queries decode those. its alias tables are
+    rebuilt from the decoded probabilities with thresholds of the same size.
+ */
+public class CountTable
+{
+    // number of diatonic chords counted for each context
+    public static final int NUM_CHORDS = 7;
+    // marks an unused slot, packed contexts are never negative
+    private static final int EMPTY = - 1;
+    // slots start at this size and double when the table is more than half full
+    private static final int INITIAL_CAPACITY = 64;
+    // bytes per slot in the ranking array: the number of suggestions then the chord indices
+    private static final int RANK_STRIDE = NUM_CHORDS + 1;
+    // ranking of a context that was never observed: every chord ties at zero
+    private static final byte[] UNOBSERVED_RANKING = { 7, 0, 1, 2, 3, 4, 5, 6 };
+    // backoff slots are followed until at least this many chords are suggested
+    private static final int MIN_SUGGESTIONS = 3;
+    // smoothing methods: none, add k to every count, Witten-Bell and interpolated Kneser-Ney
+    public static final int SMOOTH_NONE = 0;
+    public static final int SMOOTH_ADD_K = 1;
+    public static final int SMOOTH_WITTEN_BELL = 2;
+    public static final int SMOOTH_KNESER_NEY = 3;
+    // names of the smoothing methods, indexed by the constants above
+    public static final String[] SMOOTHING_NAMES = { "none", "add-k", "witten-bell", "kneser-ney" };
+    // alias tables of a smoothed slot share this total between the chords
+    private static final int PROBABILITY_SCALE = 1 << 20;
+    // Kneser-Ney discount used when the counts give no estimate
+    private static final float DEFAULT_DISCOUNT = 0.75f;
+
+    // packed context of each slot
+    private int[] m_keys;
+    // chord counts, NUM_CHORDS per slot
+    private int[] m_counts;
+    // sum of the chord counts of each slot
+    private int[] m_totals;
+    // suggested chords, RANK_STRIDE bytes per slot, null until Rank is called
+    private byte[] m_ranks;
+    // alias tables, NUM_CHORDS per slot, null until Rank is called.
+    //     a chord drawn evenly is kept if a draw below the total of the slot is
+    //     under its threshold, otherwise its alias is taken instead
+    private int[] m_aliasThresholds;
+    private byte[] m_aliases;
+    // alias thresholds of a quantized table, NUM_CHORDS codes of m_bits per slot,
+    //     high byte first, out of the largest code. null unless Quantize is called
+    private byte[] m_aliasCodes;
+    // backoff slot of each slot, -1 if it has none
+    private int[] m_backoff;
+    // smoothed probabilities, NUM_CHORDS per slot, null unless Smooth is called
+    private float[] m_probabilities;
+    // quantized log probabilities, NUM_CHORDS codes of m_bits per slot, high byte first,
+    //     null unless Quantize is called, after which m_counts and m_aliasThresholds are null
+    private byte[] m_codes;
+    private int m_bits;
+    // number of used slots
+    private int m_size;
+    // scratch for RankSlot and BuildAlias, a table is changed by one thread at a time
+    private final int[] m_ranking = new int[ NUM_CHORDS ];
+    private final long[] m_weights = new long[ NUM_CHORDS ];
+    private final int[] m_under = new int[ NUM_CHORDS ];
+    private final int[] m_over = new int[ NUM_CHORDS ];
+
+    /*
+    NAME
+
+        CountTable - constructor for CountTable class
+
+    SYNOPSIS
+
+        CountTable()
+
+    DESCRIPTION
+
+        allocates an empty table
+     */
+    public CountTable()
+    {
+        this( INITIAL_CAPACITY );
+    }
+
+    /*
+    NAME
+
+        CountTable - constructor for CountTable class with a given number of slots
+
+    SYNOPSIS
+
+        CountTable( int a_capacity )
+
+            a_capacity --> the number of slots, must be a power of two
+
+    DESCRIPTION
+
+        allocates an empty table
+     */
+    private CountTable( int a_capacity )
+    {
+        Allocate( a_capacity );
+    }
+
+    /*
+    NAME
+
+        Read - reads a table written by Write
+
+    SYNOPSIS
+
+        CountTable Read( ByteBuffer a_buffer )
+
+            a_buffer --> the buffer positioned at the start of the table
+
+    DESCRIPTION
+
+        reads the slot arrays straight into place with bulk gets,
+            nothing is rehashed or re-ranked.
+        leaves the buffer positioned after the table.
+
+    RETURNS
+
+        the table as it was when written
+     */
+    public static CountTable Read( ByteBuffer a_buffer )
+    {
+        int capacity = a_buffer.getInt();
+        CountTable table = new CountTable( capacity );
+        table.m_size = a_buffer.getInt();
+        boolean ranked = a_buffer.get() != 0;
+        boolean smoothed = a_buffer.get() != 0;
+        int bits = a_buffer.get();
+
+        a_buffer.asIntBuffer()
+                .get( table.m_keys )
+                .get( table.m_backoff )
+                .get( table.m_totals );
+        a_buffer.position( a_buffer.position() + capacity * 3 * 4 );
+        if ( bits != 0 )
+        {
+            table.m_counts = null;
+            table.m_bits = bits;
+            table.m_codes = new byte[ capacity * NUM_CHORDS * bits / 8 ];
+            a_buffer.get( table.m_codes );
+        }
+        else
+        {
+            a_buffer.asIntBuffer()
+                    .get( table.m_counts );
+            a_buffer.position( a_buffer.position() + capacity * NUM_CHORDS * 4 );
+        }
+        if ( smoothed )
+        {
+            table.m_probabilities = new float[ capacity * NUM_CHORDS ];
+            a_buffer.asFloatBuffer()
+                    .get( table.m_probabilities );
+            a_buffer.position( a_buffer.position() + capacity * NUM_CHORDS * 4 );
+        }
+        if ( ranked )
+        {
+            table.m_ranks = new byte[ capacity * RANK_STRIDE ];
+            a_buffer.get( table.m_ranks );
+        }
+        if ( ranked && bits != 0 )
+        {
+            table.m_aliasCodes = new byte[ capacity * NUM_CHORDS * bits / 8 ];
+            a_buffer.get( table.m_aliasCodes );
+        }
+        else if ( ranked )
+        {
+            table.m_aliasThresholds = new int[ capacity * NUM_CHORDS ];
+            a_buffer.asIntBuffer()
+                    .get( table.m_aliasThresholds );
+            a_buffer.position( a_buffer.position() + capacity * NUM_CHORDS * 4 );
+        }
+        if ( ranked )
+        {
+            table.m_aliases = new byte[ capacity * NUM_CHORDS ];
+            a_buffer.get( table.m_aliases );
+        }
+        return table;
+    }
+
+    /*
+    NAME
+
+        Write - writes the table in the layout read by Read
+
+    SYNOPSIS
+
+        void Write( DataOutputStream a_out )
+
+            a_out --> the stream to write to
+
+    DESCRIPTION
+
+        writes the capacity, size, whether the table is ranked and smoothed and the size of its
+            codes, then the keys, backoff slots, totals, counts or codes, probabilities,
+            rankings and alias tables of every slot.
+        empty slots are written too so the arrays can be read back in bulk.
+     */
+    public void Write( DataOutputStream a_out ) throws IOException
+    {
+        a_out.writeInt( m_keys.length );
+        a_out.writeInt( m_size );
+        a_out.writeBoolean( m_ranks != null );
+        a_out.writeBoolean( m_probabilities != null );
+        a_out.writeByte( m_bits );
+        for ( int key : m_keys )
+        {
+            a_out.writeInt( key );
+        }
+        for ( int backoff : m_backoff )
+        {
+            a_out.writeInt( backoff );
+        }
+        for ( int total : m_totals )
+        {
+            a_out.writeInt( total );
+        }
+        if ( m_codes != null )
+        {
+            a_out.write( m_codes );
+        }
+        else
+        {
+            for ( int count : m_counts )
+            {
+                a_out.writeInt( count );
+            }
+        }
+        if ( m_probabilities != null )
+        {
+            for ( float probability : m_probabilities )
+            {
+                a_out.writeFloat( probability );
+            }
+        }
+        if ( m_ranks != null )
+        {
+            a_out.write( m_ranks );
+        }
+        if ( m_aliasCodes != null )
+        {
+            a_out.write( m_aliasCodes );
+        }
+        else if ( m_aliasThresholds != null )
+        {
+            for ( int threshold : m_aliasThresholds )
+            {
+                a_out.writeInt( threshold );
+            }
+        }
+        if ( m_aliases != null )
+        {
+            a_out.write( m_aliases );
+        }
+    }
+
+    /*
+    NAME
+
+        Increment - adds one to the count of a chord in a context
+
+    SYNOPSIS
+
+        void Increment( int a_context, int a_chord )
+
+            a_context --> the packed context
+            a_chord --> the chord index, 0 to 6
+
+    DESCRIPTION
+
+        finds or creates the slot of the context and increments the chord count
+        if the table has been ranked, the ranking of that slot is kept up to date
+     */
+    public void Increment( int a_context, int a_chord )
+    {
+        Increment( a_context, a_chord, EMPTY );
+    }
+
+    /*
+    NAME
+
+        Increment - adds one to the count of a chord in a context that backs off
+
+    SYNOPSIS
+
+        void Increment( int a_context, int a_chord, int a_backoffContext )
+
+            a_context --> the packed context
+            a_chord --> the chord index, 0 to 6
+            a_backoffContext --> the packed context to back off to, already in the table, or -1
+
+    DESCRIPTION
+
+        increments the chord count like Increment( int, int ).
+        when the context is new its backoff slot is looked up once and stored,
+            so queries can follow it without hashing again.
+     */
+    public void Increment( int a_context, int a_chord, int a_backoffContext )
+    {
+        CheckCountsCanChange();
+        int slot = Insert( a_context );
+        if ( m_totals[ slot ] == 0 && a_backoffContext != EMPTY )
+        {
+            m_backoff[ slot ] = Find( a_backoffContext );
+        }
+        m_counts[ slot * NUM_CHORDS + a_chord ]++;
+        m_totals[ slot ]++;
+        if ( m_ranks != null )
+        {
+            RankSlot( slot );
+        }
+    }
+
+    /*
+    NAME
+
+        Decrement - takes one from the count of a chord in a context
+
+    SYNOPSIS
+
+        void Decrement( int a_context, int a_chord )
+
+            a_context --> the packed context
+            a_chord --> the chord index, 0 to 6
+
+    DESCRIPTION
+
+        undoes an Increment. counts never go below zero and the slot is kept
+            even when its total reaches zero, a slot with no observations
+            suggests nothing of its own and backs off.
+        if the table has been ranked, the ranking of that slot is kept up to date
+     */
+    public void Decrement( int a_context, int a_chord )
+    {
+        CheckCountsCanChange();
+        int slot = Find( a_context );
+        if ( slot < 0 || m_counts[ slot * NUM_CHORDS + a_chord ] == 0 )
+        {
+            return;
+        }
+        m_counts[ slot * NUM_CHORDS + a_chord ]--;
+        m_totals[ slot ]--;
+        if ( m_ranks != null )
+        {
+            RankSlot( slot );
+        }
+    }
+
+    /*
+    NAME
+
+        Merge - adds the counts of another table to this one
+
+    SYNOPSIS
+
+        void Merge( CountTable a_other )
+
+            a_other --> the table to add
+
+    DESCRIPTION
+
+        adds the counts of every context of the other table, in slot order so
+            the result only depends on the order tables are merged in.
+        once every context is present, contexts new to this table take the
+            backoff context they had in the other table.
+     */
+    public void Merge( CountTable a_other )
+    {
+        CheckCountsCanChange();
+        for ( int other = 0; other < a_other.m_keys.length; other++ )
+        {
+            if ( a_other.m_keys[ other ] != EMPTY )
+            {
+                int slot = Insert( a_other.m_keys[ other ] );
+                for ( int i = 0; i < NUM_CHORDS; i++ )
+                {
+                    m_counts[ slot * NUM_CHORDS + i ] += a_other.m_counts[ other * NUM_CHORDS + i ];
+                }
+                m_totals[ slot ] += a_other.m_totals[ other ];
+                if ( m_ranks != null )
+                {
+                    RankSlot( slot );
+                }
+            }
+        }
+        for ( int other = 0; other < a_other.m_keys.length; other++ )
+        {
+            if ( a_other.m_keys[ other ] != EMPTY && a_other.m_backoff[ other ] >= 0 )
+            {
+                int slot = Find( a_other.m_keys[ other ] );
+                if ( m_backoff[ slot ] < 0 )
+                {
+                    m_backoff[ slot ] = Find( a_other.m_keys[ a_other.m_backoff[ other ] ] );
+                }
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        Copy - copies the table
+
+    SYNOPSIS
+
+        CountTable Copy()
+
+    DESCRIPTION
+
+        clones the slot arrays, so changing the copy leaves this table untouched
+
+    RETURNS
+
+        a table with the same slots, counts and rankings
+     */
+    public CountTable Copy()
+    {
+        CountTable copy = new CountTable( m_keys.length );
+        System.arraycopy( m_keys, 0, copy.m_keys, 0, m_keys.length );
+        if ( m_codes != null )
+        {
+            copy.m_counts = null;
+            copy.m_codes = m_codes.clone();
+            copy.m_bits = m_bits;
+        }
+        else
+        {
+            System.arraycopy( m_counts, 0, copy.m_counts, 0, m_counts.length );
+        }
+        System.arraycopy( m_totals, 0, copy.m_totals, 0, m_totals.length );
+        System.arraycopy( m_backoff, 0, copy.m_backoff, 0, m_backoff.length );
+        if ( m_probabilities != null )
+        {
+            copy.m_probabilities = m_probabilities.clone();
+        }
+        if ( m_ranks != null )
+        {
+            copy.m_ranks = m_ranks.clone();
+        }
+        if ( m_aliasThresholds != null )
+        {
+            copy.m_aliasThresholds = m_aliasThresholds.clone();
+        }
+        if ( m_aliasCodes != null )
+        {
+            copy.m_aliasCodes = m_aliasCodes.clone();
+        }
+        if ( m_aliases != null )
+        {
+            copy.m_aliases = m_aliases.clone();
+        }
+        copy.m_size = m_size;
+        return copy;
+    }
+
+    /*
+    NAME
+
+        Rank - computes the suggested chords of every context
+
+    SYNOPSIS
+
+        void Rank()
+
+    DESCRIPTION
+
+        allocates the ranking and alias arrays and ranks each used slot.
+        called once after the table is filled.
+     */
+    public void Rank()
+    {
+        CheckNotQuantized();
+        m_ranks = new byte[ m_keys.length * RANK_STRIDE ];
+        m_aliasThresholds = new int[ m_keys.length * NUM_CHORDS ];
+        m_aliases = new byte[ m_keys.length * NUM_CHORDS ];
+        for ( int slot = 0; slot < m_keys.length; slot++ )
+        {
+            if ( m_keys[ slot ] != EMPTY )
+            {
+                RankSlot( slot );
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        Smooth - smooths the counts of every context and ranks the table
+
+    SYNOPSIS
+
+        void Smooth( int a_method, float a_k )
+
+            a_method --> one of the SMOOTH_ constants
+            a_k --> the amount added to every count by SMOOTH_ADD_K, ignored otherwise
+
+    DESCRIPTION
+
+        gives every slot a probability for each chord, mixing in the probabilities
+            of its backoff slot so chords it never saw are ranked by the shorter
+            context instead of tying at zero. slots are smoothed shortest first,
+            so each backoff slot is done before the slots that use it.
+        add-k adds a_k to every count. Witten-Bell gives the backoff slot a weight
+            equal to the number of different chords seen. Kneser-Ney subtracts a
+            discount from every count and gives it to the backoff slot, whose
+            probabilities count in how many contexts a chord was seen rather than
+            how often.
+        SMOOTH_NONE removes any smoothing.
+        called once the counts are final, they cannot be changed afterwards.
+     */
+    public void Smooth( int a_method, float a_k )
+    {
+        CheckNotQuantized();
+        m_probabilities = null;
+        if ( a_method != SMOOTH_NONE )
+        {
+            int capacity = m_keys.length;
+            // number of backoffs between each slot and the empty context
+            int[] depths = new int[ capacity ];
+            int maxDepth = 0;
+            // per slot and chord: the number of longer contexts that backed off to it and saw the chord
+            int[] continuations = new int[ capacity * NUM_CHORDS ];
+            int[] continuationTotals = new int[ capacity ];
+            // slot chords seen once and twice, to estimate the Kneser-Ney discount
+            int once = 0;
+            int twice = 0;
+            for ( int slot = 0; slot < capacity; slot++ )
+            {
+                if ( m_keys[ slot ] == EMPTY )
+                {
+                    continue;
+                }
+                for ( int backoff = m_backoff[ slot ]; backoff >= 0; backoff = m_backoff[ backoff ] )
+                {
+                    depths[ slot ]++;
+                }
+                maxDepth = Math.max( maxDepth, depths[ slot ] );
+                for ( int i = 0; i < NUM_CHORDS; i++ )
+                {
+                    int count = m_counts[ slot * NUM_CHORDS + i ];
+                    once += count == 1 ? 1 : 0;
+                    twice += count == 2 ? 1 : 0;
+                    if ( count > 0 && m_backoff[ slot ] >= 0 )
+                    {
+                        continuations[ m_backoff[ slot ] * NUM_CHORDS + i ]++;
+                        continuationTotals[ m_backoff[ slot ] ]++;
+                    }
+                }
+            }
+            float discount = once + twice > 0 ? (float) once / ( once + 2 * twice ) : DEFAULT_DISCOUNT;
+
+            float[] probabilities = new float[ capacity * NUM_CHORDS ];
+            for ( int depth = 0; depth <= maxDepth; depth++ )
+            {
+                for ( int slot = 0; slot < capacity; slot++ )
+                {
+                    if ( m_keys[ slot ] != EMPTY && depths[ slot ] == depth )
+                    {
+                        // Kneser-Ney uses continuation counts for every context another backs off to
+                        boolean continuation = a_method == SMOOTH_KNESER_NEY && continuationTotals[ slot ] > 0;
+                        SmoothSlot( slot, a_method, continuation ? continuations : m_counts,
+                                    continuation ? continuationTotals[ slot ] : m_totals[ slot ],
+                                    a_k, discount, probabilities );
+                    }
+                }
+            }
+            m_probabilities = probabilities;
+        }
+        Rank();
+    }
+
+    /*
+    NAME
+
+        SmoothSlot - smooths the counts of one slot
+
+    SYNOPSIS
+
+        void SmoothSlot( int a_slot, int a_method, int[] a_counts, int a_total,
+                         float a_k, float a_discount, float[] a_out )
+
+            a_slot --> the slot to smooth, its backoff slot already smoothed
+            a_method --> one of the SMOOTH_ constants
+            a_counts --> the counts to smooth, NUM_CHORDS per slot
+            a_total --> the sum of the counts of the slot
+            a_k --> the amount added to every count by add-k
+            a_discount --> the amount taken from every count by Kneser-Ney
+            a_out --> receives the probabilities, NUM_CHORDS per slot
+
+    DESCRIPTION
+
+        a slot with no counts takes the probabilities of its backoff slot,
+            the empty context backs off to every chord equally
+     */
+    private void SmoothSlot( int a_slot, int a_method, int[] a_counts, int a_total,
+                             float a_k, float a_discount, float[] a_out )
+    {
+        int base = a_slot * NUM_CHORDS;
+        int backoff = m_backoff[ a_slot ] * NUM_CHORDS;
+        int seen = 0;
+        for ( int i = 0; i < NUM_CHORDS; i++ )
+        {
+            seen += a_counts[ base + i ] > 0 ? 1 : 0;
+        }
+        for ( int i = 0; i < NUM_CHORDS; i++ )
+        {
+            float lower = backoff < 0 ? 1f / NUM_CHORDS : a_out[ backoff + i ];
+            float count = a_counts[ base + i ];
+            if ( a_total == 0 )
+            {
+                a_out[ base + i ] = lower;
+            }
+            else if ( a_method == SMOOTH_ADD_K )
+            {
+                a_out[ base + i ] = ( count + a_k ) / ( a_total + a_k * NUM_CHORDS );
+            }
+            else if ( a_method == SMOOTH_WITTEN_BELL )
+            {
+                a_out[ base + i ] = ( count + seen * lower ) / ( a_total + seen );
+            }
+            else
+            {
+                a_out[ base + i ] = ( Math.max( count - a_discount, 0 ) + a_discount * seen * lower ) / a_total;
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        Quantize - replaces the counts with log probabilities of a few bits
+
+    SYNOPSIS
+
+        void Quantize( int a_bits )
+
+            a_bits --> 8 or 16, the size of each code
+
+    DESCRIPTION
+
+        codes the probability of every chord of every slot, smoothed if the table is.
+        where the chords of a slot have different probabilities but would get the
+            same code, the less likely ones are moved down a code, so the order of
+            the chords by probability is kept exactly. a chord is never moved onto
+            the code of probability zero, so the least likely codes may stay equal.
+        the rankings are kept as they are, so suggestions do not change, and the
+            alias tables are rebuilt from the decoded probabilities so sampling
+            stays two random numbers, see BuildAlias.
+        drops the counts and probabilities, which are most of the memory of the
+            table. the table must have been ranked and cannot be counted,
+            smoothed or ranked again.
+     */
+    public void Quantize( int a_bits )
+    {
+        if ( m_ranks == null || m_codes != null || ( a_bits != 8 && a_bits != 16 ) )
+        {
+            throw new IllegalStateException( "only a ranked table can be quantized, once, to 8 or 16 bits" );
+        }
+        int max = Quantizer.GetMaxCode( a_bits );
+        int bytes = a_bits / 8;
+        byte[] codes = new byte[ m_keys.length * NUM_CHORDS * bytes ];
+        double[] probabilities = new double[ NUM_CHORDS ];
+        int[] slotCodes = new int[ NUM_CHORDS ];
+        int[] order = new int[ NUM_CHORDS ];
+        for ( int slot = 0; slot < m_keys.length; slot++ )
+        {
+            if ( m_keys[ slot ] == EMPTY )
+            {
+                continue;
+            }
+            for ( int i = 0; i < NUM_CHORDS; i++ )
+            {
+                probabilities[ i ] = GetProbability( slot, i );
+                slotCodes[ i ] = Quantizer.Encode( probabilities[ i ], a_bits );
+                // insertion sort, most probable first and ties in chord order
+                int j = i;
+                for ( ; j > 0 && probabilities[ order[ j - 1 ] ] < probabilities[ i ]; j-- )
+                {
+                    order[ j ] = order[ j - 1 ];
+                }
+                order[ j ] = i;
+            }
+            for ( int j = 1; j < NUM_CHORDS; j++ )
+            {
+                int above = order[ j - 1 ];
+                int chord = order[ j ];
+                if ( probabilities[ chord ] == probabilities[ above ] )
+                {
+                    slotCodes[ chord ] = slotCodes[ above ];
+                }
+                else if ( slotCodes[ chord ] <= slotCodes[ above ] )
+                {
+                    // the last code means probability zero, a chord that can happen never gets it
+                    slotCodes[ chord ] = Math.min( slotCodes[ above ] + 1, max - 1 );
+                }
+            }
+            for ( int i = 0; i < NUM_CHORDS; i++ )
+            {
+                int index = ( slot * NUM_CHORDS + i ) * bytes;
+                if ( bytes == 2 )
+                {
+                    codes[ index++ ] = (byte) ( slotCodes[ i ] >>> 8 );
+                }
+                codes[ index ] = (byte) slotCodes[ i ];
+            }
+        }
+        m_codes = codes;
+        m_bits = a_bits;
+        m_counts = null;
+        m_probabilities = null;
+        m_aliasThresholds = null;
+        m_aliasCodes = new byte[ codes.length ];
+        for ( int slot = 0; slot < m_keys.length; slot++ )
+        {
+            if ( m_keys[ slot ] != EMPTY )
+            {
+                BuildAlias( slot );
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        GetBits - gets the size of the codes of a quantized table
+
+    SYNOPSIS
+
+        int GetBits()
+
+    RETURNS
+
+        8 or 16 if the table is quantized, otherwise 0
+     */
+    public int GetBits()
+    {
+        return m_bits;
+    }
+
+    /*
+    NAME
+
+        GetSuggestions - gets the ranked suggestions of a slot
+
+    SYNOPSIS
+
+        int GetSuggestions( int a_slot, int[] a_out )
+
+            a_slot --> the slot returned by Find
+            a_out --> receives the chord indices, must hold at least seven
+
+    DESCRIPTION
+
+        copies the precomputed ranking of the slot, most popular chords first.
+        while fewer than three chords are suggested, the backoff slot is followed
+            and its chords that are not suggested yet are added after them.
+        an unobserved context suggests all seven chords.
+        the table must have been ranked.
+
+    RETURNS
+
+        the number of chord indices written
+     */
+    public int GetSuggestions( int a_slot, int[] a_out )
+    {
+        return GetSuggestions( a_slot, a_out, 0 );
+    }
+
+    /*
+    NAME
+
+        GetSuggestions - gets the suggested chords of a slot into part of a buffer
+
+    SYNOPSIS
+
+        int GetSuggestions( int a_slot, int[] a_out, int a_offset )
+
+            a_slot --> the slot returned by Find, or -1
+            a_out --> receives the suggested chords as chord indices
+            a_offset --> where in a_out to start writing, seven entries must fit after it
+
+    DESCRIPTION
+
+        the same as GetSuggestions( a_slot, a_out ), lets suggestions for many
+            contexts share one buffer
+
+    RETURNS
+
+        the number of chord indices written
+     */
+    public int GetSuggestions( int a_slot, int[] a_out, int a_offset )
+    {
+        int count = 0;
+        for ( int slot = a_slot; slot >= 0 && count < MIN_SUGGESTIONS; slot = m_backoff[ slot ] )
+        {
+            count = AddRanks( slot, a_out, a_offset, count );
+        }
+        if ( count == 0 )
+        {
+            count = SuggestAll( a_out, a_offset );
+        }
+        return count;
+    }
+
+    /*
+    NAME
+
+        GetDistribution - gets the probability of every chord in a slot
+
+    SYNOPSIS
+
+        void GetDistribution( int a_slot, float[] a_out )
+
+            a_slot --> the slot returned by Find, or -1
+            a_out --> receives the probability of each chord index, must hold seven
+
+    DESCRIPTION
+
+        follows the backoff slots to the first context with observations and
+            divides its counts by its total, so the probabilities add up to one.
+            a smoothed table copies the smoothed probabilities of that context,
+            a quantized table decodes them and divides them by their sum.
+        an unobserved context gives every chord the same probability.
+        nothing is allocated.
+     */
+    public void GetDistribution( int a_slot, float[] a_out )
+    {
+        int slot = a_slot;
+        while ( slot >= 0 && m_totals[ slot ] == 0 )
+        {
+            slot = m_backoff[ slot ];
+        }
+        if ( slot < 0 )
+        {
+            Arrays.fill( a_out, 0, NUM_CHORDS, 1f / NUM_CHORDS );
+            return;
+        }
+        if ( m_codes != null )
+        {
+            float sum = 0;
+            for ( int i = 0; i < NUM_CHORDS; i++ )
+            {
+                a_out[ i ] = Decode( slot, i );
+                sum += a_out[ i ];
+            }
+            for ( int i = 0; i < NUM_CHORDS; i++ )
+            {
+                a_out[ i ] /= sum;
+            }
+            return;
+        }
+        float total = m_totals[ slot ];
+        int offset = slot * NUM_CHORDS;
+        for ( int i = 0; i < NUM_CHORDS; i++ )
+        {
+            a_out[ i ] = m_probabilities != null ? m_probabilities[ offset + i ] : m_counts[ offset + i ] / total;
+        }
+    }
+
+    /*
+    NAME
+
+        Sample - draws a chord from the counts of a slot
+
+    SYNOPSIS
+
+        int Sample( int a_slot, Random a_random )
+
+            a_slot --> the slot returned by Find, or -1
+            a_random --> the source of random numbers
+
+    DESCRIPTION
+
+        follows the backoff slots to the first context with observations, the
+            same one GetDistribution uses, and draws from its alias table.
+        the same random numbers always draw the same chord, whatever platform.
+        a quantized table draws from the alias table of its decoded probabilities.
+        an unobserved context draws every chord equally.
+        the table must have been ranked.
+
+    RETURNS
+
+        the chord index drawn, each with probability count / total
+     */
+    public int Sample( int a_slot, Random a_random )
+    {
+        int slot = a_slot;
+        while ( slot >= 0 && m_totals[ slot ] == 0 )
+        {
+            slot = m_backoff[ slot ];
+        }
+        int chord = a_random.nextInt( NUM_CHORDS );
+        if ( slot < 0 )
+        {
+            return chord;
+        }
+        int offset = slot * NUM_CHORDS + chord;
+        if ( m_codes != null )
+        {
+            int threshold = GetCode( m_aliasCodes, offset );
+            return a_random.nextInt( Quantizer.GetMaxCode( m_bits ) ) < threshold ? chord : m_aliases[ offset ];
+        }
+        int total = m_probabilities != null ? PROBABILITY_SCALE : m_totals[ slot ];
+        return a_random.nextInt( total ) < m_aliasThresholds[ offset ] ? chord : m_aliases[ offset ];
+    }
+
+    /*
+    NAME
+
+        GetSuggestions - gets the suggested chords of a slot with a delta added
+
+    SYNOPSIS
+
+        int GetSuggestions( int a_slot, int a_length, CountTable a_delta, int a_deltaSlot,
+                            int a_deltaLength, int[] a_out, int a_offset )
+
+            a_slot --> the longest observed context in this table, or -1
+            a_length --> the number of chords in that context, or -1
+            a_delta --> counts added to this table, with the same contexts and backoffs
+            a_deltaSlot --> the longest observed context in a_delta, or -1
+            a_deltaLength --> the number of chords in that context, or -1
+            a_out --> receives the suggested chords as chord indices
+            a_offset --> where in a_out to start writing, seven entries must fit after it
+
+    DESCRIPTION
+
+        suggests the same chords GetSuggestions would if the delta had been
+            added to this table, without changing either.
+        walks both backoff chains together from the longer context. a context the
+            delta never saw uses the ranking of this table, the others are ranked
+            from the summed counts, seven adds per context.
+        nothing is allocated. this table must have been ranked, the delta need not be.
+
+    RETURNS
+
+        the number of chord indices written
+     */
+    public int GetSuggestions( int a_slot, int a_length, CountTable a_delta, int a_deltaSlot,
+                               int a_deltaLength, int[] a_out, int a_offset )
+    {
+        int count = 0;
+        int slot = a_slot;
+        int delta = a_deltaSlot;
+        for ( int length = Math.max( a_length, a_deltaLength ); length >= 0 && count < MIN_SUGGESTIONS; length-- )
+        {
+            int current = length <= a_length ? slot : - 1;
+            if ( length <= a_deltaLength )
+            {
+                count = AddRanking( current, a_delta, delta, a_out, a_offset, count );
+                delta = a_delta.m_backoff[ delta ];
+            }
+            else
+            {
+                count = AddRanks( current, a_out, a_offset, count );
+            }
+            if ( current >= 0 )
+            {
+                slot = m_backoff[ slot ];
+            }
+        }
+        if ( count == 0 )
+        {
+            count = SuggestAll( a_out, a_offset );
+        }
+        return count;
+    }
+
+    /*
+    NAME
+
+        GetDistribution - gets the probability of every chord in a slot with a delta added
+
+    SYNOPSIS
+
+        void GetDistribution( int a_slot, int a_length, CountTable a_delta, int a_deltaSlot,
+                              int a_deltaLength, float[] a_out )
+
+            a_slot --> the longest observed context in this table, or -1
+            a_length --> the number of chords in that context, or -1
+            a_delta --> counts added to this table, with the same contexts and backoffs
+            a_deltaSlot --> the longest observed context in a_delta, or -1
+            a_deltaLength --> the number of chords in that context, or -1
+            a_out --> receives the probability of each chord index, must hold seven
+
+    DESCRIPTION
+
+        walks both backoff chains together to the first context with observations
+            in either table and divides the summed counts by their sum.
+            a smoothed or quantized table counts its probabilities times its total.
+        an unobserved context gives every chord the same probability.
+        nothing is allocated.
+     */
+    public void GetDistribution( int a_slot, int a_length, CountTable a_delta, int a_deltaSlot,
+                                 int a_deltaLength, float[] a_out )
+    {
+        int slot = a_slot;
+        int delta = a_deltaSlot;
+        for ( int length = Math.max( a_length, a_deltaLength ); length >= 0; length-- )
+        {
+            int current = length <= a_length ? slot : - 1;
+            int currentDelta = length <= a_deltaLength ? delta : - 1;
+            if ( GetTotal( current ) + a_delta.GetTotal( currentDelta ) > 0 )
+            {
+                float sum = 0;
+                for ( int i = 0; i < NUM_CHORDS; i++ )
+                {
+                    a_out[ i ] = MergedWeight( current, a_delta, currentDelta, i );
+                    sum += a_out[ i ];
+                }
+                for ( int i = 0; i < NUM_CHORDS; i++ )
+                {
+                    a_out[ i ] /= sum;
+                }
+                return;
+            }
+            if ( current >= 0 )
+            {
+                slot = m_backoff[ slot ];
+            }
+            if ( currentDelta >= 0 )
+            {
+                delta = a_delta.m_backoff[ delta ];
+            }
+        }
+        Arrays.fill( a_out, 0, NUM_CHORDS, 1f / NUM_CHORDS );
+    }
+
+    /*
+    NAME
+
+        Sample - draws a chord from the counts of a slot with a delta added
+
+    SYNOPSIS
+
+        int Sample( int a_slot, int a_length, CountTable a_delta, int a_deltaSlot,
+                    int a_deltaLength, Random a_random )
+
+            a_slot --> the longest observed context in this table, or -1
+            a_length --> the number of chords in that context, or -1
+            a_delta --> counts added to this table, with the same contexts and backoffs
+            a_deltaSlot --> the longest observed context in a_delta, or -1
+            a_deltaLength --> the number of chords in that context, or -1
+            a_random --> the source of random numbers
+
+    DESCRIPTION
+
+        finds the same context GetDistribution does. if the delta has no observations
+            there this table draws as Sample does, otherwise the summed counts
+            are walked, at most seven steps. this table must have been ranked.
+
+    RETURNS
+
+        the chord index drawn, each with the probability GetDistribution gives it
+     */
+    public int Sample( int a_slot, int a_length, CountTable a_delta, int a_deltaSlot,
+                       int a_deltaLength, Random a_random )
+    {
+        int slot = a_slot;
+        int delta = a_deltaSlot;
+        for ( int length = Math.max( a_length, a_deltaLength ); length >= 0; length-- )
+        {
+            int current = length <= a_length ? slot : - 1;
+            int currentDelta = length <= a_deltaLength ? delta : - 1;
+            int deltaTotal = a_delta.GetTotal( currentDelta );
+            if ( deltaTotal == 0 && GetTotal( current ) > 0 )
+            {
+                return Sample( current, a_random );
+            }
+            if ( deltaTotal > 0 )
+            {
+                float sum = 0;
+                for ( int i = 0; i < NUM_CHORDS; i++ )
+                {
+                    sum += MergedWeight( current, a_delta, currentDelta, i );
+                }
+                float draw = a_random.nextFloat() * sum;
+                for ( int i = 0; i < NUM_CHORDS - 1; i++ )
+                {
+                    draw -= MergedWeight( current, a_delta, currentDelta, i );
+                    if ( draw < 0 )
+                    {
+                        return i;
+                    }
+                }
+                return NUM_CHORDS - 1;
+            }
+            if ( current >= 0 )
+            {
+                slot = m_backoff[ slot ];
+            }
+            if ( currentDelta >= 0 )
+            {
+                delta = a_delta.m_backoff[ delta ];
+            }
+        }
+        return a_random.nextInt( NUM_CHORDS );
+    }
+
+    /*
+    NAME
+
+        GetKey - gets the context stored in a slot
+
+    SYNOPSIS
+
+        int GetKey( int a_slot )
+
+            a_slot --> a slot of the table
+
+    RETURNS
+
+        the packed context of the slot, or -1 if the slot is empty or out of range
+     */
+    public int GetKey( int a_slot )
+    {
+        return a_slot < 0 || a_slot >= m_keys.length ? EMPTY : m_keys[ a_slot ];
+    }
+
+    /*
+    NAME
+
+        GetBackoff - gets the backoff slot of a slot
+
+    SYNOPSIS
+
+        int GetBackoff( int a_slot )
+
+            a_slot --> the slot returned by Find
+
+    RETURNS
+
+        the slot of the shorter context, or -1 if there is none
+     */
+    public int GetBackoff( int a_slot )
+    {
+        return a_slot < 0 ? - 1 : m_backoff[ a_slot ];
+    }
+
+    /*
+    NAME
+
+        Find - finds the slot of a context
+
+    SYNOPSIS
+
+        int Find( int a_context )
+
+            a_context --> the packed context
+
+    DESCRIPTION
+
+        probes linearly from the hashed position until the context or an empty slot is found
+
+    RETURNS
+
+        the slot of the context, or -1 if the context was never observed
+     */
+    public int Find( int a_context )
+    {
+        int mask = m_keys.length - 1;
+        for ( int slot = Hash( a_context ) & mask; ; slot = ( slot + 1 ) & mask )
+        {
+            if ( m_keys[ slot ] == a_context )
+            {
+                return slot;
+            }
+            if ( m_keys[ slot ] == EMPTY )
+            {
+                return - 1;
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        GetCount - gets the count of a chord in a slot
+
+    SYNOPSIS
+
+        int GetCount( int a_slot, int a_chord )
+
+            a_slot --> the slot returned by Find
+            a_chord --> the chord index, 0 to 6
+
+    DESCRIPTION
+
+        a quantized table has no counts and estimates them from its codes
+
+    RETURNS
+
+        the number of times the chord was observed in the context, 0 if the slot is -1
+     */
+    public int GetCount( int a_slot, int a_chord )
+    {
+        if ( a_slot < 0 )
+        {
+            return 0;
+        }
+        if ( m_codes != null )
+        {
+            return Math.round( Decode( a_slot, a_chord ) * m_totals[ a_slot ] );
+        }
+        return m_counts[ a_slot * NUM_CHORDS + a_chord ];
+    }
+
+    /*
+    NAME
+
+        GetTotal - gets the total count of a slot
+
+    SYNOPSIS
+
+        int GetTotal( int a_slot )
+
+            a_slot --> the slot returned by Find
+
+    RETURNS
+
+        the number of observations of the context, 0 if the slot is -1
+     */
+    public int GetTotal( int a_slot )
+    {
+        return a_slot < 0 ? 0 : m_totals[ a_slot ];
+    }
+
+    /*
+    NAME
+
+        GetProbability - gets the probability of a chord in a slot
+
+    SYNOPSIS
+
+        double GetProbability( int a_slot, int a_chord )
+
+            a_slot --> the slot returned by Find
+            a_chord --> the chord index, 0 to 6
+
+    DESCRIPTION
+
+        the counts are never normalized in place, the ratio is computed when asked for.
+        a smoothed table gives the smoothed probability instead,
+            a quantized one the decoded probability.
+
+    RETURNS
+
+        the count of the chord divided by the total of the context, 0 if nothing was observed
+     */
+    public double GetProbability( int a_slot, int a_chord )
+    {
+        if ( m_codes != null && a_slot >= 0 )
+        {
+            return Decode( a_slot, a_chord );
+        }
+        if ( m_probabilities != null && a_slot >= 0 )
+        {
+            return m_probabilities[ a_slot * NUM_CHORDS + a_chord ];
+        }
+        int total = GetTotal( a_slot );
+        return total == 0 ? 0 : (double) GetCount( a_slot, a_chord ) / total;
+    }
+
+    /*
+    NAME
+
+        Size - gets the number of observed contexts
+
+    SYNOPSIS
+
+        int Size()
+
+    RETURNS
+
+        the number of used slots
+     */
+    public int Size()
+    {
+        return m_size;
+    }
+
+    /*
+    NAME
+
+        GetMemorySize - estimates the memory used by the table
+
+    SYNOPSIS
+
+        long GetMemorySize()
+
+    RETURNS
+
+        the number of bytes in the slot arrays
+     */
+    public long GetMemorySize()
+    {
+        long bytes = 4L * ( m_keys.length + m_totals.length + m_backoff.length );
+        if ( m_counts != null )
+        {
+            bytes += 4L * m_counts.length;
+        }
+        if ( m_probabilities != null )
+        {
+            bytes += 4L * m_probabilities.length;
+        }
+        if ( m_codes != null )
+        {
+            bytes += m_codes.length;
+        }
+        if ( m_ranks != null )
+        {
+            bytes += m_ranks.length;
+        }
+        if ( m_aliasThresholds != null )
+        {
+            bytes += 4L * m_aliasThresholds.length;
+        }
+        if ( m_aliasCodes != null )
+        {
+            bytes += m_aliasCodes.length;
+        }
+        if ( m_aliases != null )
+        {
+            bytes += m_aliases.length;
+        }
+        return bytes;
+    }
+
+    /*
+    NAME
+
+        RankSlot - ranks the chords of a slot
+
+    SYNOPSIS
+
+        void RankSlot( int a_slot )
+
+            a_slot --> the slot to rank
+
+    DESCRIPTION
+
+        builds the alias table of the slot
+        writes the chords ranked by AddRanking after their number
+     */
+    private void RankSlot( int a_slot )
+    {
+        BuildAlias( a_slot );
+        int count = AddRanking( a_slot, null, - 1, m_ranking, 0, 0 );
+        int offset = a_slot * RANK_STRIDE;
+        for ( int i = 0; i < count; i++ )
+        {
+            m_ranks[ offset + 1 + i ] = (byte) m_ranking[ i ];
+        }
+        m_ranks[ offset ] = (byte) count;
+    }
+
+    /*
+    NAME
+
+        AddRanking - ranks the counts of a slot with a delta added to them
+
+    SYNOPSIS
+
+        int AddRanking( int a_slot, CountTable a_delta, int a_deltaSlot, int[] a_out, int a_offset, int a_count )
+
+            a_slot --> the slot in this table, or -1
+            a_delta --> counts added to this table, or null
+            a_deltaSlot --> the slot of the same context in a_delta, or -1
+            a_out --> holds the chords suggested so far, receives the new ones
+            a_offset --> where the suggestions start in a_out
+            a_count --> the number of chords suggested so far
+
+    DESCRIPTION
+
+        finds the top three distinct counts, or smoothed probabilities if this table is smoothed
+        adds the chords with those counts in order of popularity,
+            with the most popular chords at the front and ties in chord order.
+        chords with no count or probability or already suggested are not added.
+
+    RETURNS
+
+        the number of chords suggested, with the new ones
+     */
+    private int AddRanking( int a_slot, CountTable a_delta, int a_deltaSlot, int[] a_out, int a_offset, int a_count )
+    {
+        float first = 0;
+        float second = 0;
+        float third = 0;
+
+        // find top three counts
+        for ( int i = 0; i < NUM_CHORDS; i++ )
+        {
+            float current = MergedWeight( a_slot, a_delta, a_deltaSlot, i );
+            if ( current > first )
+            {
+                third = second;
+                second = first;
+                first = current;
+            }
+            else if ( current > second && current < first )
+            {
+                third = second;
+                second = current;
+            }
+            else if ( current > third && current < second )
+            {
+                third = current;
+            }
+        }
+
+        // add chords matching top count, then second and third
+        int suggested = Suggested( a_out, a_offset, a_count );
+        int count = a_count;
+        for ( int n = 0; n < 3; n++ )
+        {
+            float level = n == 0 ? first : n == 1 ? second : third;
+            if ( level == 0 )
+            {
+                break;
+            }
+            for ( int j = 0; j < NUM_CHORDS; j++ )
+            {
+                if ( MergedWeight( a_slot, a_delta, a_deltaSlot, j ) == level && ( suggested & ( 1 << j ) ) == 0 )
+                {
+                    a_out[ a_offset + count++ ] = j;
+                }
+            }
+        }
+        return count;
+    }
+
+    /*
+    NAME
+
+        AddRanks - adds the precomputed ranking of a slot to the suggestions
+
+    SYNOPSIS
+
+        int AddRanks( int a_slot, int[] a_out, int a_offset, int a_count )
+
+            a_slot --> the slot, or -1
+            a_out --> holds the chords suggested so far, receives the new ones
+            a_offset --> where the suggestions start in a_out
+            a_count --> the number of chords suggested so far
+
+    RETURNS
+
+        the number of chords suggested, with the ones not already suggested added
+     */
+    private int AddRanks( int a_slot, int[] a_out, int a_offset, int a_count )
+    {
+        if ( a_slot < 0 )
+        {
+            return a_count;
+        }
+        int suggested = Suggested( a_out, a_offset, a_count );
+        int count = a_count;
+        int offset = a_slot * RANK_STRIDE;
+        for ( int i = 0; i < m_ranks[ offset ]; i++ )
+        {
+            int chord = m_ranks[ offset + 1 + i ];
+            if ( ( suggested & ( 1 << chord ) ) == 0 )
+            {
+                suggested |= 1 << chord;
+                a_out[ a_offset + count++ ] = chord;
+            }
+        }
+        return count;
+    }
+
+    /*
+    NAME
+
+        SuggestAll - suggests every chord for a context never observed
+
+    SYNOPSIS
+
+        int SuggestAll( int[] a_out, int a_offset )
+
+            a_out --> receives the chord indices
+            a_offset --> where in a_out to start writing
+
+    RETURNS
+
+        seven, the number of chords written
+     */
+    private static int SuggestAll( int[] a_out, int a_offset )
+    {
+        for ( int i = 0; i < NUM_CHORDS; i++ )
+        {
+            a_out[ a_offset + i ] = UNOBSERVED_RANKING[ 1 + i ];
+        }
+        return NUM_CHORDS;
+    }
+
+    /*
+    NAME
+
+        Suggested - marks the chords already suggested
+
+    SYNOPSIS
+
+        int Suggested( int[] a_out, int a_offset, int a_count )
+
+            a_out --> holds the chords suggested so far
+            a_offset --> where the suggestions start in a_out
+            a_count --> the number of chords suggested so far
+
+    RETURNS
+
+        a bit per chord index, set if the chord is suggested
+     */
+    private static int Suggested( int[] a_out, int a_offset, int a_count )
+    {
+        int suggested = 0;
+        for ( int i = 0; i < a_count; i++ )
+        {
+            suggested |= 1 << a_out[ a_offset + i ];
+        }
+        return suggested;
+    }
+
+    /*
+    NAME
+
+        MergedWeight - gets the weight of a chord in a slot with a delta added
+
+    SYNOPSIS
+
+        float MergedWeight( int a_slot, CountTable a_delta, int a_deltaSlot, int a_chord )
+
+            a_slot --> the slot in this table, or -1
+            a_delta --> counts added to this table, or null
+            a_deltaSlot --> the slot of the same context in a_delta, or -1
+            a_chord --> the chord index, 0 to 6
+
+    DESCRIPTION
+
+        the weight of a chord is its count, or its smoothed or decoded probability
+            times the total of the slot if this table is smoothed or quantized,
+            so it stays on the scale of the counts of the delta
+
+    RETURNS
+
+        the sum of both weights
+     */
+    private float MergedWeight( int a_slot, CountTable a_delta, int a_deltaSlot, int a_chord )
+    {
+        float weight;
+        if ( a_slot < 0 )
+        {
+            weight = 0;
+        }
+        else if ( m_codes != null )
+        {
+            weight = Decode( a_slot, a_chord ) * m_totals[ a_slot ];
+        }
+        else if ( m_probabilities != null )
+        {
+            weight = m_probabilities[ a_slot * NUM_CHORDS + a_chord ] * m_totals[ a_slot ];
+        }
+        else
+        {
+            weight = m_counts[ a_slot * NUM_CHORDS + a_chord ];
+        }
+        return a_delta == null ? weight : weight + a_delta.GetCount( a_deltaSlot, a_chord );
+    }
+
+    /*
+    NAME
+
+        BuildAlias - builds the alias table of a slot
+
+    SYNOPSIS
+
+        void BuildAlias( int a_slot )
+
+            a_slot --> the slot to build
+
+    DESCRIPTION
+
+        every chord gets an even share of the total. each chord under its share
+            gives the rest of its share to a chord over it, which becomes its alias.
+        works on seven times the counts, so the thresholds are exact integers
+            and no rounding can change a draw.
+        a smoothed slot works on its probabilities in fixed point instead. a quantized
+            slot works on its decoded probabilities in units of the largest code, so
+            the thresholds fit in codes, and a chord that can happen keeps at least one.
+     */
+    private void BuildAlias( int a_slot )
+    {
+        int base = a_slot * NUM_CHORDS;
+        long share = m_totals[ a_slot ];
+        long[] weights = m_weights;
+        if ( m_codes != null )
+        {
+            share = Quantizer.GetMaxCode( m_bits );
+            double decoded = 0;
+            for ( int i = 0; i < NUM_CHORDS; i++ )
+            {
+                decoded += Decode( a_slot, i );
+            }
+            for ( int i = 0; i < NUM_CHORDS; i++ )
+            {
+                double probability = decoded > 0 ? Decode( a_slot, i ) / decoded : 0;
+                weights[ i ] = probability > 0 ? Math.max( Math.round( probability * share ), 1 ) : 0;
+            }
+        }
+        else if ( m_probabilities != null )
+        {
+            share = PROBABILITY_SCALE;
+            for ( int i = 0; i < NUM_CHORDS; i++ )
+            {
+                weights[ i ] = Math.round( (double) m_probabilities[ base + i ] * PROBABILITY_SCALE );
+            }
+        }
+        else
+        {
+            for ( int i = 0; i < NUM_CHORDS; i++ )
+            {
+                weights[ i ] = m_counts[ base + i ];
+            }
+        }
+        if ( m_codes != null || m_probabilities != null )
+        {
+            // the most probable chord takes the rounding so the weights add up to the share
+            long sum = 0;
+            int largest = 0;
+            for ( int i = 0; i < NUM_CHORDS; i++ )
+            {
+                sum += weights[ i ];
+                if ( weights[ i ] > weights[ largest ] )
+                {
+                    largest = i;
+                }
+            }
+            weights[ largest ] += share - sum;
+        }
+        // chords under and at or over their share, used as stacks
+        int[] under = m_under;
+        int[] over = m_over;
+        int numUnder = 0;
+        int numOver = 0;
+        for ( int i = 0; i < NUM_CHORDS; i++ )
+        {
+            weights[ i ] *= NUM_CHORDS;
+            if ( weights[ i ] < share )
+            {
+                under[ numUnder++ ] = i;
+            }
+            else
+            {
+                over[ numOver++ ] = i;
+            }
+        }
+        while ( numUnder > 0 && numOver > 0 )
+        {
+            int small = under[ --numUnder ];
+            int large = over[ --numOver ];
+            SetAliasThreshold( base + small, (int) weights[ small ] );
+            m_aliases[ base + small ] = (byte) large;
+            weights[ large ] -= share - weights[ small ];
+            if ( weights[ large ] < share )
+            {
+                under[ numUnder++ ] = large;
+            }
+            else
+            {
+                over[ numOver++ ] = large;
+            }
+        }
+        // the weights add up to seven shares exactly, so the chords left fill their whole share
+        while ( numOver > 0 )
+        {
+            int large = over[ --numOver ];
+            SetAliasThreshold( base + large, (int) share );
+            m_aliases[ base + large ] = (byte) large;
+        }
+    }
+
+    /*
+    NAME
+
+        SetAliasThreshold - stores an alias threshold
+
+    SYNOPSIS
+
+        void SetAliasThreshold( int a_index, int a_threshold )
+
+            a_index --> the slot times NUM_CHORDS plus the chord index
+            a_threshold --> the threshold, at most the largest code if the table is quantized
+     */
+    private void SetAliasThreshold( int a_index, int a_threshold )
+    {
+        if ( m_aliasCodes == null )
+        {
+            m_aliasThresholds[ a_index ] = a_threshold;
+        }
+        else if ( m_bits == 8 )
+        {
+            m_aliasCodes[ a_index ] = (byte) a_threshold;
+        }
+        else
+        {
+            m_aliasCodes[ 2 * a_index ] = (byte) ( a_threshold >>> 8 );
+            m_aliasCodes[ 2 * a_index + 1 ] = (byte) a_threshold;
+        }
+    }
+
+    /*
+    NAME
+
+        CheckCountsCanChange - stops the counts of a smoothed or quantized table from changing
+
+    SYNOPSIS
+
+        void CheckCountsCanChange()
+
+    DESCRIPTION
+
+        throws IllegalStateException if the table is smoothed, its probabilities
+            would no longer match its counts, or quantized, it has no counts
+     */
+    private void CheckCountsCanChange()
+    {
+        CheckNotQuantized();
+        if ( m_probabilities != null )
+        {
+            throw new IllegalStateException( "the counts of a smoothed table cannot change" );
+        }
+    }
+
+    /*
+    NAME
+
+        CheckNotQuantized - stops a quantized table from being counted or ranked
+
+    SYNOPSIS
+
+        void CheckNotQuantized()
+
+    DESCRIPTION
+
+        throws IllegalStateException if the table is quantized, its counts are gone
+     */
+    private void CheckNotQuantized()
+    {
+        if ( m_codes != null )
+        {
+            throw new IllegalStateException( "a quantized table has no counts" );
+        }
+    }
+
+    /*
+    NAME
+
+        Decode - gets the probability coded for a chord in a quantized slot
+
+    SYNOPSIS
+
+        float Decode( int a_slot, int a_chord )
+
+            a_slot --> the slot
+            a_chord --> the chord index, 0 to 6
+
+    RETURNS
+
+        the decoded probability, the chords of a slot add up to about one
+     */
+    private float Decode( int a_slot, int a_chord )
+    {
+        return Quantizer.Decode( GetCode( m_codes, a_slot * NUM_CHORDS + a_chord ), m_bits );
+    }
+
+    /*
+    NAME
+
+        GetCode - reads a code of m_bits
+
+    SYNOPSIS
+
+        int GetCode( byte[] a_codes, int a_index )
+
+            a_codes --> the codes, high byte first
+            a_index --> the slot times NUM_CHORDS plus the chord index
+
+    RETURNS
+
+        the code, 0 to the largest code
+     */
+    private int GetCode( byte[] a_codes, int a_index )
+    {
+        return m_bits == 8
+               ? a_codes[ a_index ] & 0xFF
+               : ( a_codes[ 2 * a_index ] & 0xFF ) << 8 | ( a_codes[ 2 * a_index + 1 ] & 0xFF );
+    }
+
+    /*
+    NAME
+
+        Insert - finds or creates the slot of a context
+
+    SYNOPSIS
+
+        int Insert( int a_context )
+
+            a_context --> the packed context
+
+    DESCRIPTION
+
+        grows the table first if it would become more than half full
+        claims the first empty slot on the probe path if the context is new
+
+    RETURNS
+
+        the slot of the context
+     */
+    private int Insert( int a_context )
+    {
+        if ( ( m_size + 1 ) * 2 > m_keys.length )
+        {
+            Grow();
+        }
+        int mask = m_keys.length - 1;
+        int slot = Hash( a_context ) & mask;
+        while ( m_keys[ slot ] != a_context )
+        {
+            if ( m_keys[ slot ] == EMPTY )
+            {
+                m_keys[ slot ] = a_context;
+                m_size++;
+                break;
+            }
+            slot = ( slot + 1 ) & mask;
+        }
+        return slot;
+    }
+
+    /*
+    NAME
+
+        Grow - doubles the number of slots
+
+    SYNOPSIS
+
+        void Grow()
+
+    DESCRIPTION
+
+        allocates larger arrays and reinserts every used slot with its counts and ranking
+        the backoff slots are renumbered once every slot has moved
+     */
+    private void Grow()
+    {
+        int[] keys = m_keys;
+        int[] counts = m_counts;
+        int[] totals = m_totals;
+        byte[] ranks = m_ranks;
+        int[] thresholds = m_aliasThresholds;
+        byte[] aliases = m_aliases;
+        int[] backoff = m_backoff;
+        // new slot of each old slot
+        int[] moved = new int[ keys.length ];
+        Allocate( keys.length * 2 );
+
+        int mask = m_keys.length - 1;
+        for ( int old = 0; old < keys.length; old++ )
+        {
+            if ( keys[ old ] != EMPTY )
+            {
+                int slot = Hash( keys[ old ] ) & mask;
+                while ( m_keys[ slot ] != EMPTY )
+                {
+                    slot = ( slot + 1 ) & mask;
+                }
+                moved[ old ] = slot;
+                m_keys[ slot ] = keys[ old ];
+                m_totals[ slot ] = totals[ old ];
+                System.arraycopy( counts, old * NUM_CHORDS, m_counts, slot * NUM_CHORDS, NUM_CHORDS );
+                if ( ranks != null )
+                {
+                    System.arraycopy( ranks, old * RANK_STRIDE, m_ranks, slot * RANK_STRIDE, RANK_STRIDE );
+                    System.arraycopy( thresholds, old * NUM_CHORDS, m_aliasThresholds, slot * NUM_CHORDS, NUM_CHORDS );
+                    System.arraycopy( aliases, old * NUM_CHORDS, m_aliases, slot * NUM_CHORDS, NUM_CHORDS );
+                }
+            }
+        }
+        for ( int old = 0; old < keys.length; old++ )
+        {
+            if ( keys[ old ] != EMPTY && backoff[ old ] >= 0 )
+            {
+                m_backoff[ moved[ old ] ] = moved[ backoff[ old ] ];
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        Allocate - allocates empty arrays for the given number of slots
+
+    SYNOPSIS
+
+        void Allocate( int a_capacity )
+
+            a_capacity --> the number of slots, must be a power of two
+
+    DESCRIPTION
+
+        the ranking and alias arrays are only allocated if the table was already ranked
+     */
+    private void Allocate( int a_capacity )
+    {
+        if ( m_ranks != null )
+        {
+            m_ranks = new byte[ a_capacity * RANK_STRIDE ];
+            m_aliasThresholds = new int[ a_capacity * NUM_CHORDS ];
+            m_aliases = new byte[ a_capacity * NUM_CHORDS ];
+        }
+        m_keys = new int[ a_capacity ];
+        Arrays.fill( m_keys, EMPTY );
+        m_counts = new int[ a_capacity * NUM_CHORDS ];
+        m_totals = new int[ a_capacity ];
+        m_backoff = new int[ a_capacity ];
+        Arrays.fill( m_backoff, - 1 );
+    }
+
+    /*
+    NAME
+
+        Hash - scrambles the bits of a packed context
+
+    SYNOPSIS
+
+        int Hash( int a_context )
+
+            a_context --> the packed context
+
+    DESCRIPTION
+
+        multiplies by the golden ratio and folds the high bits down so that
+        contexts that differ only in their low chords spread across the table
+
+    RETURNS
+
+        the hash of the context
+     */
+    private static int Hash( int a_context )
+    {
+        int h = a_context * 0x9E3779B9;
+        return h ^ ( h >>> 16 );
+    }
+}
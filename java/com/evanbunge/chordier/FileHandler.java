@@ -4,6 +4,9 @@ package com.evanbunge.chordier;
 import android.app.Activity;
 
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
 import java.util.ArrayList;
@@ -52,34 +55,42 @@ public class FileHandler
 
         Reads the file line by line.
         the first line is the key.
-        each subsequent line is the next chord in the progression.
+        each subsequent line is the next chord in the progression,
+            converted from its name to its chord number in the key.
 
     RETURNS
 
-        a ChordUtil that holds the key and progression
+        a ChordUtil that holds the key and progression and suggests from the current genre
      */
     public ChordUtil LoadChordFile( String a_filename )
     {
         String key = null;
-        List<String> progression = new ArrayList<>();
+        int[] progression = new int[ 0 ];
         try
         {
             BufferedReader reader = new BufferedReader( new InputStreamReader( m_activity.openFileInput( a_filename ) ) );
             // get key
             key = reader.readLine();
-            // get progression
+            ChordList chordList = ChordList.Get( key );
+            // get progression, converting each chord name to its chord number
+            List<String> names = new ArrayList<>();
             String chord;
             while ( ( chord = reader.readLine() ) != null )
             {
-                progression.add( chord );
+                names.add( chord );
             }
             reader.close();
+            progression = new int[ names.size() ];
+            for ( int i = 0; i < progression.length; i++ )
+            {
+                progression[ i ] = chordList.GetChordIndex( names.get( i ) ) + 1;
+            }
         }
         catch ( Exception e )
         {
             e.printStackTrace();
         }
-        return new ChordUtil( key, progression );
+        return new ChordUtil( ChordierApp.GetModels( m_activity ).GetCurrent(), key, progression );
     }
 
     /*
@@ -98,19 +109,19 @@ public class FileHandler
 
         gets the key and the progression from the utility class
         saves the key to the first line of the file
-        saves each line of the progression on each subsequent line
+        saves the name of each chord of the progression on each subsequent line
+        the chord model learns the saved progression in place of any saved to the same file before
     */
     public void SaveChordFile( ChordUtil a_util, String a_filename )
     {
         String key = a_util.GetKey();
-        List<String> progression = a_util.GetProgression();
         try
         {
             PrintWriter writer = new PrintWriter( m_activity.openFileOutput( a_filename, ChordPage.MODE_PRIVATE ) );
             writer.println( key );
-            for ( String chord : progression )
+            for ( int i = 0; i < a_util.GetLength(); i++ )
             {
-                writer.println( chord );
+                writer.println( a_util.GetChordName( a_util.GetChord( i ) ) );
             }
             writer.flush();
             writer.close();
@@ -119,5 +130,74 @@ public class FileHandler
         {
             e.printStackTrace();
         }
+        ChordierApp.GetModels( m_activity )
+                   .GetLearner()
+                   .Learn( a_filename, a_util.GetChordNumbers() );
+    }
+
+    /*
+    NAME
+
+        TransposeLibrary - moves every saved song a number of semitones
+
+    SYNOPSIS
+
+        int TransposeLibrary( int a_semitones )
+
+            a_semitones --> how far to move, up if positive
+
+    DESCRIPTION
+
+        streams each saved file through Transposer.TransposeSong into a file in the
+            cache directory and renames it over the song, so only one line of one
+            song is held at a time and a song is never left half written. a song
+            that fails to read or write is left as it was.
+        the mode of every song is kept, so its chord numbers and what the model
+            learned from it do not change.
+        takes file i/o, call it off the ui thread.
+
+    RETURNS
+
+        the number of songs moved
+     */
+    public int TransposeLibrary( int a_semitones )
+    {
+        File temp = new File( m_activity.getCacheDir(), "transposing" );
+        File[] songs = m_activity.getFilesDir().listFiles();
+        int moved = 0;
+        for ( File song : songs == null ? new File[ 0 ] : songs )
+        {
+            try
+            {
+                BufferedReader reader = new BufferedReader( new InputStreamReader( new FileInputStream( song ) ) );
+                PrintWriter writer = null;
+                String key;
+                try
+                {
+                    writer = new PrintWriter( new FileOutputStream( temp ) );
+                    key = Transposer.TransposeSong( reader, writer, a_semitones );
+                }
+                finally
+                {
+                    if ( writer != null )
+                    {
+                        writer.close();
+                    }
+                    reader.close();
+                }
+                // a PrintWriter swallows its errors, only a song written in full replaces the old one
+                if ( key != null && ! writer.checkError() && temp.renameTo( song ) )
+                {
+                    moved++;
+                }
+            }
+            catch ( Exception e )
+            {
+                e.printStackTrace();
+            }
+            // still there if the song was not moved
+            temp.delete();
+        }
+        return moved;
     }
 }
@@ -0,0 +1,400 @@
+package com.evanbunge.chordier;
+
+import java.util.Arrays;
+
+/*
+GapFiller
+    fills every blank chord of a progression at once, taking the chords after
+    each blank into account as well as the ones before it.
+
+    the end table is treated as a chain over the last three chords, each chord
+    depending on the three before it. a forward pass and a backward pass over
+    that chain give the probability of each chord at each blank, and a Viterbi
+    pass over the same transitions gives the most likely way to fill them all.
+    a pinned chord has a single value, so the work per chord is at most
+    343 states times 7 chords and grows linearly with the progression.
+    the states stay three chords long whatever order the end table was
+    trained with, since each chord more would make them eight times as many,
+    so a longer end table answers from its contexts of three chords.
+
+    the tables are kept between calls and only grow, so filling the same
+    length again allocates nothing. a filler is used by one thread at a time.
+ */
+public class GapFiller
+{
+    // chord numbers 0 to 7, 0 standing for the chords before the start
+    private static final int NUM_VALUES = CountTable.NUM_CHORDS + 1;
+    // states of the last three chords
+    private static final int NUM_STATES = NUM_VALUES * NUM_VALUES * NUM_VALUES;
+
+    private final ChordModel m_model;
+    // per chord and state: scaled forward and backward probabilities, best log likelihood
+    private double[] m_forward;
+    private double[] m_backward;
+    private double[] m_best;
+    // per chord and state: the chord 3 before it on the best path
+    private byte[] m_from;
+    // per chord: the sum the forward probabilities were divided by
+    private double[] m_scale;
+    private final float[] m_distribution;
+
+    /*
+    NAME
+
+        GapFiller - constructor for GapFiller class
+
+    SYNOPSIS
+
+        GapFiller( ChordModel a_model )
+
+            a_model --> the model to fill blanks from
+     */
+    public GapFiller( ChordModel a_model )
+    {
+        m_model = a_model;
+        m_forward = new double[ 0 ];
+        m_backward = new double[ 0 ];
+        m_best = new double[ 0 ];
+        m_from = new byte[ 0 ];
+        m_scale = new double[ 0 ];
+        m_distribution = new float[ CountTable.NUM_CHORDS ];
+    }
+
+    /*
+    NAME
+
+        Fill - fills the blanks of a progression
+
+    SYNOPSIS
+
+        double Fill( int[] a_chords, int a_length, int[] a_out, float[] a_marginals )
+
+            a_chords --> chord numbers of the progression, 0 for a blank to fill
+            a_length --> the number of chords in the progression
+            a_out --> receives the chord numbers with every blank filled, must hold a_length
+            a_marginals --> receives the probability of each chord index at each index,
+                            seven per chord, or null if not wanted
+
+    DESCRIPTION
+
+        runs the forward and Viterbi passes together, then the backward pass if
+            marginals are wanted, and follows the best path back from its last state.
+        pinned chords are copied to a_out and get probability one.
+        chords never seen in a context get ChordModel.MIN_PROBABILITY.
+
+    RETURNS
+
+        the natural log likelihood of the filled progression
+     */
+    public double Fill( int[] a_chords, int a_length, int[] a_out, float[] a_marginals )
+    {
+        if ( a_length == 0 )
+        {
+            return 0;
+        }
+        Allocate( a_length );
+
+        // forward and Viterbi
+        for ( int i = 0; i < a_length; i++ )
+        {
+            int offset = i * NUM_STATES;
+            for ( int a = First( a_chords, i - 3 ); a <= Last( a_chords, i - 3 ); a++ )
+            {
+                for ( int b = First( a_chords, i - 2 ); b <= Last( a_chords, i - 2 ); b++ )
+                {
+                    for ( int c = First( a_chords, i - 1 ); c <= Last( a_chords, i - 1 ); c++ )
+                    {
+                        int from = State( a, b, c );
+                        double forward = i == 0 ? 1 : m_forward[ offset - NUM_STATES + from ];
+                        double best = i == 0 ? 0 : m_best[ offset - NUM_STATES + from ];
+                        m_model.GetEndDistribution( a, b, c, m_distribution );
+                        for ( int d = First( a_chords, i ); d <= Last( a_chords, i ); d++ )
+                        {
+                            float probability = Math.max( m_distribution[ d - 1 ], ChordModel.MIN_PROBABILITY );
+                            int to = offset + State( b, c, d );
+                            m_forward[ to ] += forward * probability;
+                            double score = best + Math.log( probability );
+                            if ( score > m_best[ to ] )
+                            {
+                                m_best[ to ] = score;
+                                m_from[ to ] = (byte) a;
+                            }
+                        }
+                    }
+                }
+            }
+            Normalize( a_chords, i );
+        }
+
+        // best last state, then back along the path
+        int last = a_length - 1;
+        int bestState = - 1;
+        for ( int b = First( a_chords, last - 2 ); b <= Last( a_chords, last - 2 ); b++ )
+        {
+            for ( int c = First( a_chords, last - 1 ); c <= Last( a_chords, last - 1 ); c++ )
+            {
+                for ( int d = First( a_chords, last ); d <= Last( a_chords, last ); d++ )
+                {
+                    int state = State( b, c, d );
+                    if ( bestState < 0 || m_best[ last * NUM_STATES + state ] > m_best[ last * NUM_STATES + bestState ] )
+                    {
+                        bestState = state;
+                    }
+                }
+            }
+        }
+        double likelihood = m_best[ last * NUM_STATES + bestState ];
+        int state = bestState;
+        for ( int i = last; i >= 0; i-- )
+        {
+            a_out[ i ] = state % NUM_VALUES;
+            int a = m_from[ i * NUM_STATES + state ];
+            state = State( a, state / ( NUM_VALUES * NUM_VALUES ), state / NUM_VALUES % NUM_VALUES );
+        }
+
+        if ( a_marginals != null )
+        {
+            Backward( a_chords, a_length );
+            Marginals( a_chords, a_length, a_marginals );
+        }
+        return likelihood;
+    }
+
+    /*
+    NAME
+
+        Backward - computes the scaled backward probabilities
+
+    SYNOPSIS
+
+        void Backward( int[] a_chords, int a_length )
+
+            a_chords --> chord numbers of the progression, 0 for a blank
+            a_length --> the number of chords in the progression
+
+    DESCRIPTION
+
+        each state gets the probability of the chords after it given the state,
+            divided by the same sums as the forward pass so the two can be multiplied
+     */
+    private void Backward( int[] a_chords, int a_length )
+    {
+        int last = a_length - 1;
+        for ( int b = First( a_chords, last - 2 ); b <= Last( a_chords, last - 2 ); b++ )
+        {
+            for ( int c = First( a_chords, last - 1 ); c <= Last( a_chords, last - 1 ); c++ )
+            {
+                for ( int d = First( a_chords, last ); d <= Last( a_chords, last ); d++ )
+                {
+                    m_backward[ last * NUM_STATES + State( b, c, d ) ] = 1;
+                }
+            }
+        }
+        for ( int i = last; i > 0; i-- )
+        {
+            int offset = i * NUM_STATES;
+            for ( int a = First( a_chords, i - 3 ); a <= Last( a_chords, i - 3 ); a++ )
+            {
+                for ( int b = First( a_chords, i - 2 ); b <= Last( a_chords, i - 2 ); b++ )
+                {
+                    for ( int c = First( a_chords, i - 1 ); c <= Last( a_chords, i - 1 ); c++ )
+                    {
+                        m_model.GetEndDistribution( a, b, c, m_distribution );
+                        double backward = 0;
+                        for ( int d = First( a_chords, i ); d <= Last( a_chords, i ); d++ )
+                        {
+                            float probability = Math.max( m_distribution[ d - 1 ], ChordModel.MIN_PROBABILITY );
+                            backward += probability * m_backward[ offset + State( b, c, d ) ];
+                        }
+                        m_backward[ offset - NUM_STATES + State( a, b, c ) ] = backward / m_scale[ i ];
+                    }
+                }
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        Marginals - sums the probability of each chord at each index
+
+    SYNOPSIS
+
+        void Marginals( int[] a_chords, int a_length, float[] a_out )
+
+            a_chords --> chord numbers of the progression, 0 for a blank
+            a_length --> the number of chords in the progression
+            a_out --> receives seven probabilities per chord
+     */
+    private void Marginals( int[] a_chords, int a_length, float[] a_out )
+    {
+        for ( int i = 0; i < a_length; i++ )
+        {
+            int offset = i * NUM_STATES;
+            int out = i * CountTable.NUM_CHORDS;
+            double total = 0;
+            for ( int k = 0; k < CountTable.NUM_CHORDS; k++ )
+            {
+                a_out[ out + k ] = 0;
+            }
+            for ( int b = First( a_chords, i - 2 ); b <= Last( a_chords, i - 2 ); b++ )
+            {
+                for ( int c = First( a_chords, i - 1 ); c <= Last( a_chords, i - 1 ); c++ )
+                {
+                    for ( int d = First( a_chords, i ); d <= Last( a_chords, i ); d++ )
+                    {
+                        int state = offset + State( b, c, d );
+                        double probability = m_forward[ state ] * m_backward[ state ];
+                        a_out[ out + d - 1 ] += probability;
+                        total += probability;
+                    }
+                }
+            }
+            for ( int k = 0; k < CountTable.NUM_CHORDS; k++ )
+            {
+                a_out[ out + k ] /= total;
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        Normalize - scales the forward probabilities of one chord to add up to one
+
+    SYNOPSIS
+
+        void Normalize( int[] a_chords, int a_index )
+
+            a_chords --> chord numbers of the progression, 0 for a blank
+            a_index --> the index of the chord
+
+    DESCRIPTION
+
+        keeps long progressions from underflowing, the sum is kept for the backward pass
+     */
+    private void Normalize( int[] a_chords, int a_index )
+    {
+        int offset = a_index * NUM_STATES;
+        double total = 0;
+        for ( int b = First( a_chords, a_index - 2 ); b <= Last( a_chords, a_index - 2 ); b++ )
+        {
+            for ( int c = First( a_chords, a_index - 1 ); c <= Last( a_chords, a_index - 1 ); c++ )
+            {
+                for ( int d = First( a_chords, a_index ); d <= Last( a_chords, a_index ); d++ )
+                {
+                    total += m_forward[ offset + State( b, c, d ) ];
+                }
+            }
+        }
+        m_scale[ a_index ] = total;
+        for ( int b = First( a_chords, a_index - 2 ); b <= Last( a_chords, a_index - 2 ); b++ )
+        {
+            for ( int c = First( a_chords, a_index - 1 ); c <= Last( a_chords, a_index - 1 ); c++ )
+            {
+                for ( int d = First( a_chords, a_index ); d <= Last( a_chords, a_index ); d++ )
+                {
+                    m_forward[ offset + State( b, c, d ) ] /= total;
+                }
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        Allocate - makes the tables big enough and clears them
+
+    SYNOPSIS
+
+        void Allocate( int a_length )
+
+            a_length --> the number of chords in the progression
+     */
+    private void Allocate( int a_length )
+    {
+        int size = a_length * NUM_STATES;
+        if ( m_forward.length < size )
+        {
+            m_forward = new double[ size ];
+            m_backward = new double[ size ];
+            m_best = new double[ size ];
+            m_from = new byte[ size ];
+            m_scale = new double[ a_length ];
+        }
+        Arrays.fill( m_forward, 0, size, 0 );
+        Arrays.fill( m_best, 0, size, Double.NEGATIVE_INFINITY );
+    }
+
+    /*
+    NAME
+
+        First - gets the lowest chord number an index can hold
+
+    SYNOPSIS
+
+        int First( int[] a_chords, int a_index )
+
+            a_chords --> chord numbers of the progression, 0 for a blank
+            a_index --> the index, may be before the start
+
+    RETURNS
+
+        0 before the start, the pinned chord, or 1 for a blank
+     */
+    private static int First( int[] a_chords, int a_index )
+    {
+        if ( a_index < 0 )
+        {
+            return 0;
+        }
+        return a_chords[ a_index ] == 0 ? 1 : a_chords[ a_index ];
+    }
+
+    /*
+    NAME
+
+        Last - gets the highest chord number an index can hold
+
+    SYNOPSIS
+
+        int Last( int[] a_chords, int a_index )
+
+            a_chords --> chord numbers of the progression, 0 for a blank
+            a_index --> the index, may be before the start
+
+    RETURNS
+
+        0 before the start, the pinned chord, or 7 for a blank
+     */
+    private static int Last( int[] a_chords, int a_index )
+    {
+        if ( a_index < 0 )
+        {
+            return 0;
+        }
+        return a_chords[ a_index ] == 0 ? CountTable.NUM_CHORDS : a_chords[ a_index ];
+    }
+
+    /*
+    NAME
+
+        State - numbers three consecutive chords
+
+    SYNOPSIS
+
+        int State( int a_first, int a_second, int a_third )
+
+            a_first --> the earliest chord number
+            a_second --> the middle chord number
+            a_third --> the latest chord number
+
+    RETURNS
+
+        the state, 0 to 511
+     */
+    private static int State( int a_first, int a_second, int a_third )
+    {
+        return ( a_first * NUM_VALUES + a_second ) * NUM_VALUES + a_third;
+    }
+}
@@ -0,0 +1,509 @@
+package com.evanbunge.chordier;
+
+import java.util.Arrays;
+
+/*
+Harmonizer
+    picks the best chord sequence for a whole melody at once.
+    each slot of the melody gives every chord a weight for how well it fits
+    the notes, and each chord after another scores the log of the probability
+    the model gives it after that chord alone. a Viterbi pass finds the
+    sequence with the highest total, so a chord can give up a point of melody
+    fit to lead better into the chords after it.
+
+    the state is only the last chord, so the work is 7 times 7 per slot and a
+    melody of any length is decoded in one pass. ties go to the lower chord,
+    so the same melody always gets the same harmony.
+
+    DecodeBest finds the k best harmonies from the same tables, lazily. each
+    chord of each slot lists the best harmonies into it as they are needed, the
+    first being the one Decode found. the next one into a chord only needs the
+    next one into the chord its last one came from, so after the first pass
+    every further harmony costs at most 7 per slot instead of 7 times 7, and
+    every harmony found is different.
+
+    the tables are kept between calls and only grow. the rows before the first
+    changed slot are still right, so a caller that knows where the melody changed
+    can decode again from there. a harmonizer is used by one thread at a time.
+ */
+public class Harmonizer
+{
+    // the most harmonies DecodeBest can find at once, ranks are kept in a byte
+    public static final int MAX_HARMONIES = Byte.MAX_VALUE;
+    // how many melody points the log probability of a transition is worth,
+    //     at 1 a chord ten times less likely after the previous one costs about two notes of fit
+    private static final double TRANSITION_WEIGHT = 1;
+    // chord numbers 0 to 7 a chord can follow, 0 standing for the start
+    private static final int NUM_VALUES = CountTable.NUM_CHORDS + 1;
+
+    // weighted log probability of each chord index after each chord number, [chord number * 7 + chord index]
+    private final double[] m_transitions;
+    // per slot and chord index: the best score of a harmony ending there
+    private double[] m_best;
+    // per slot and chord index: the chord index before it on that harmony
+    private byte[] m_from;
+    // per slot, chord index and rank: the best scores into that chord found so far, best first,
+    //     and the chord index and rank before each one
+    private double[] m_kBest;
+    private byte[] m_kFrom;
+    private byte[] m_kRank;
+    // per slot and chord index: how many are listed, and whether there are no more
+    private int[] m_kCount;
+    private boolean[] m_kDone;
+    // per slot and chord index: the call to DecodeBest that last listed it, so a list
+    //     is only started when the call first needs it
+    private int[] m_kStamp;
+    private int m_stamp;
+    // per slot, chord index and chord index before it: the rank of the next harmony
+    //     into the chord before that has not been used yet
+    private byte[] m_kNext;
+    // per chord index of the last slot: the rank of the next harmony not yet returned
+    private final int[] m_endNext;
+    // per slot: the chord being extended, while walking back to extend a chord
+    private int[] m_chain;
+
+    /*
+    NAME
+
+        Harmonizer - constructor for Harmonizer class
+
+    SYNOPSIS
+
+        Harmonizer( ChordModel a_model )
+
+            a_model --> the model to take transitions from, null while it is loading
+
+    DESCRIPTION
+
+        works out the score of every transition once. without a model every
+            transition scores the same and each slot gets its best fitting chord.
+     */
+    public Harmonizer( ChordModel a_model )
+    {
+        m_transitions = new double[ NUM_VALUES * CountTable.NUM_CHORDS ];
+        m_best = new double[ 0 ];
+        m_from = new byte[ 0 ];
+        m_kBest = new double[ 0 ];
+        m_kFrom = new byte[ 0 ];
+        m_kRank = new byte[ 0 ];
+        m_kCount = new int[ 0 ];
+        m_kDone = new boolean[ 0 ];
+        m_kStamp = new int[ 0 ];
+        m_kNext = new byte[ 0 ];
+        m_endNext = new int[ CountTable.NUM_CHORDS ];
+        m_chain = new int[ 0 ];
+        if ( a_model == null )
+        {
+            return;
+        }
+        float[] distribution = new float[ CountTable.NUM_CHORDS ];
+        for ( int prev = 0; prev < NUM_VALUES; prev++ )
+        {
+            a_model.GetTransitionDistribution( prev, distribution );
+            for ( int k = 0; k < CountTable.NUM_CHORDS; k++ )
+            {
+                m_transitions[ prev * CountTable.NUM_CHORDS + k ] =
+                        TRANSITION_WEIGHT * Math.log( Math.max( distribution[ k ], ChordModel.MIN_PROBABILITY ) );
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        Decode - picks the chords of a melody
+
+    SYNOPSIS
+
+        double Decode( int[] a_weights, int a_slots, int a_from, int[] a_out )
+
+            a_weights --> the weight of each chord index for each slot, seven per slot
+            a_slots --> the number of slots in the melody
+            a_from --> the first slot whose weights changed since the last call,
+                       0 for a new melody
+            a_out --> receives the chord number 1 to 7 of each slot, must hold a_slots
+
+    DESCRIPTION
+
+        fills the rows of the tables from a_from on, each chord taking the best
+            chord before it, then follows the best path back from the last slot.
+        nothing is allocated unless the melody is longer than any before it.
+
+    RETURNS
+
+        the score of the harmony, 0 for an empty melody
+     */
+    public double Decode( int[] a_weights, int a_slots, int a_from, int[] a_out )
+    {
+        if ( a_slots == 0 )
+        {
+            return 0;
+        }
+        Allocate( a_slots );
+
+        for ( int i = a_from; i < a_slots; i++ )
+        {
+            int row = i * CountTable.NUM_CHORDS;
+            for ( int d = 0; d < CountTable.NUM_CHORDS; d++ )
+            {
+                double best = m_transitions[ d ];
+                int from = 0;
+                if ( i > 0 )
+                {
+                    best = Double.NEGATIVE_INFINITY;
+                    for ( int c = 0; c < CountTable.NUM_CHORDS; c++ )
+                    {
+                        double score = m_best[ row - CountTable.NUM_CHORDS + c ]
+                                       + m_transitions[ ( c + 1 ) * CountTable.NUM_CHORDS + d ];
+                        if ( score > best )
+                        {
+                            best = score;
+                            from = c;
+                        }
+                    }
+                }
+                m_best[ row + d ] = best + a_weights[ row + d ];
+                m_from[ row + d ] = (byte) from;
+            }
+        }
+
+        // best last chord, then back along the path
+        int last = ( a_slots - 1 ) * CountTable.NUM_CHORDS;
+        int chord = 0;
+        for ( int d = 1; d < CountTable.NUM_CHORDS; d++ )
+        {
+            if ( m_best[ last + d ] > m_best[ last + chord ] )
+            {
+                chord = d;
+            }
+        }
+        double score = m_best[ last + chord ];
+        for ( int i = a_slots - 1; i >= 0; i-- )
+        {
+            a_out[ i ] = chord + 1;
+            chord = m_from[ i * CountTable.NUM_CHORDS + chord ];
+        }
+        return score;
+    }
+
+    /*
+    NAME
+
+        Step - picks the chord of one slot after a chord already played
+
+    SYNOPSIS
+
+        int Step( int a_prev, int[] a_weights, int a_offset )
+
+            a_prev --> the chord number before the slot, 0 at the start
+            a_weights --> the weight of each chord index for the slot
+            a_offset --> where in a_weights the seven weights are
+
+    DESCRIPTION
+
+        scores each chord the way Decode does, by its weight and its transition
+            from a_prev, for when the chords before cannot change any more.
+        ties go to the lower chord. nothing is allocated.
+
+    RETURNS
+
+        the chord number 1 to 7 picked
+     */
+    public int Step( int a_prev, int[] a_weights, int a_offset )
+    {
+        int chord = 0;
+        double best = Double.NEGATIVE_INFINITY;
+        for ( int d = 0; d < CountTable.NUM_CHORDS; d++ )
+        {
+            double score = m_transitions[ a_prev * CountTable.NUM_CHORDS + d ] + a_weights[ a_offset + d ];
+            if ( score > best )
+            {
+                best = score;
+                chord = d;
+            }
+        }
+        return chord + 1;
+    }
+
+    /*
+    NAME
+
+        DecodeBest - picks the k best harmonies of a melody
+
+    SYNOPSIS
+
+        int DecodeBest( int[] a_weights, int a_slots, int a_from, int a_k, int[] a_out, double[] a_scores )
+
+            a_weights --> the weight of each chord index for each slot, seven per slot
+            a_slots --> the number of slots in the melody
+            a_from --> the first slot whose weights changed since the last call,
+                       0 for a new melody, as for Decode
+            a_k --> how many harmonies to find, 1 to MAX_HARMONIES
+            a_out --> receives the chord numbers 1 to 7 of each harmony, a_slots per harmony,
+                      best first, must hold a_k * a_slots
+            a_scores --> receives the score of each harmony, must hold a_k
+
+    DESCRIPTION
+
+        runs Decode, then lists each chord of each slot it reaches with the harmony
+            Decode kept into it. the best harmonies are taken from the lists of the last slot
+            one at a time, and each list taken from is extended by Extend.
+        the first harmony is the one Decode gives. ties go to the lower chord and
+            then to the better rank before it.
+        nothing is allocated unless the melody or a_k is larger than any before.
+
+    RETURNS
+
+        the number of harmonies found, less than a_k only if the melody has
+            fewer different harmonies
+     */
+    public int DecodeBest( int[] a_weights, int a_slots, int a_from, int a_k, int[] a_out, double[] a_scores )
+    {
+        if ( a_k < 1 || a_k > MAX_HARMONIES )
+        {
+            throw new IllegalArgumentException( "cannot find " + a_k + " harmonies" );
+        }
+        if ( a_slots == 0 )
+        {
+            return 0;
+        }
+        Decode( a_weights, a_slots, a_from, a_out );
+        AllocateBest( a_slots, a_k );
+
+        m_stamp++;
+        Arrays.fill( m_endNext, 0 );
+
+        int last = ( a_slots - 1 ) * CountTable.NUM_CHORDS;
+        int found = 0;
+        while ( found < a_k )
+        {
+            // the best of the next harmonies into each last chord
+            int chord = - 1;
+            for ( int c = 0; c < CountTable.NUM_CHORDS; c++ )
+            {
+                Touch( last + c, a_k );
+                int rank = m_endNext[ c ];
+                if ( rank == m_kCount[ last + c ] )
+                {
+                    if ( m_kDone[ last + c ] || rank == a_k )
+                    {
+                        continue;
+                    }
+                    Extend( a_slots - 1, c, a_k, a_weights );
+                    if ( rank == m_kCount[ last + c ] )
+                    {
+                        continue;
+                    }
+                }
+                if ( chord < 0 || m_kBest[ ( last + c ) * a_k + rank ] > m_kBest[ ( last + chord ) * a_k + m_endNext[ chord ] ] )
+                {
+                    chord = c;
+                }
+            }
+            if ( chord < 0 )
+            {
+                break;
+            }
+
+            int rank = m_endNext[ chord ]++;
+            a_scores[ found ] = m_kBest[ ( last + chord ) * a_k + rank ];
+            for ( int i = a_slots - 1; i >= 0; i-- )
+            {
+                a_out[ found * a_slots + i ] = chord + 1;
+                int state = i * CountTable.NUM_CHORDS + chord;
+                if ( rank == 0 )
+                {
+                    // the harmony Decode kept, the list may not have been started
+                    chord = m_from[ state ];
+                    continue;
+                }
+                chord = m_kFrom[ state * a_k + rank ];
+                rank = m_kRank[ state * a_k + rank ];
+            }
+            found++;
+        }
+        return found;
+    }
+
+    /*
+    NAME
+
+        Extend - finds the next best harmony into a chord
+
+    SYNOPSIS
+
+        void Extend( int a_slot, int a_chord, int a_k, int[] a_weights )
+
+            a_slot --> the slot of the chord
+            a_chord --> the chord index
+            a_k --> the most harmonies a chord lists
+            a_weights --> the weight of each chord index for each slot
+
+    DESCRIPTION
+
+        the next harmony into a chord comes from the chord before its last one,
+            at the next rank, or from the harmonies into the other chords before
+            it that were not used yet. only that one chord before may need
+            extending first, and it may need the chord before it, so the walk
+            goes back only as far as a chord that already lists what is needed.
+            the walk is kept in m_chain, then each chord on it is extended
+            from the earliest on.
+        a chord of the first slot has only one harmony into it.
+        marks the chord done if there are no more harmonies into it.
+     */
+    private void Extend( int a_slot, int a_chord, int a_k, int[] a_weights )
+    {
+        // walk back to the first chord that does not need the one before it extended
+        int slot = a_slot;
+        int chord = a_chord;
+        while ( true )
+        {
+            m_chain[ slot ] = chord;
+            int state = slot * CountTable.NUM_CHORDS + chord;
+            if ( slot == 0 )
+            {
+                m_kDone[ state ] = true;
+                slot++;
+                break;
+            }
+            int entry = state * a_k + m_kCount[ state ] - 1;
+            int from = m_kFrom[ entry ];
+            int rank = m_kRank[ entry ] + 1;
+            m_kNext[ state * CountTable.NUM_CHORDS + from ] = (byte) rank;
+            int before = state - CountTable.NUM_CHORDS - chord + from;
+            Touch( before, a_k );
+            if ( m_kDone[ before ] || m_kCount[ before ] > rank || rank == a_k )
+            {
+                break;
+            }
+            slot--;
+            chord = from;
+        }
+
+        // extend each chord on the walk from the chords before it
+        for ( ; slot <= a_slot; slot++ )
+        {
+            chord = m_chain[ slot ];
+            int state = slot * CountTable.NUM_CHORDS + chord;
+            int row = ( slot - 1 ) * CountTable.NUM_CHORDS;
+            double best = Double.NEGATIVE_INFINITY;
+            int from = - 1;
+            for ( int c = 0; c < CountTable.NUM_CHORDS; c++ )
+            {
+                Touch( row + c, a_k );
+                int rank = m_kNext[ state * CountTable.NUM_CHORDS + c ];
+                if ( rank >= m_kCount[ row + c ] )
+                {
+                    continue;
+                }
+                double score = m_kBest[ ( row + c ) * a_k + rank ]
+                               + m_transitions[ ( c + 1 ) * CountTable.NUM_CHORDS + chord ];
+                if ( score > best )
+                {
+                    best = score;
+                    from = c;
+                }
+            }
+            if ( from < 0 )
+            {
+                m_kDone[ state ] = true;
+                continue;
+            }
+            int entry = state * a_k + m_kCount[ state ]++;
+            m_kBest[ entry ] = best + a_weights[ state ];
+            m_kFrom[ entry ] = (byte) from;
+            m_kRank[ entry ] = m_kNext[ state * CountTable.NUM_CHORDS + from ];
+        }
+    }
+
+    /*
+    NAME
+
+        Touch - starts the list of a chord the first time a call needs it
+
+    SYNOPSIS
+
+        void Touch( int a_state, int a_k )
+
+            a_state --> the slot times seven plus the chord index
+            a_k --> the most harmonies a chord lists
+
+    DESCRIPTION
+
+        lists the harmony Decode kept into the chord, with nothing before it used yet
+     */
+    private void Touch( int a_state, int a_k )
+    {
+        if ( m_kStamp[ a_state ] == m_stamp )
+        {
+            return;
+        }
+        m_kStamp[ a_state ] = m_stamp;
+        m_kBest[ a_state * a_k ] = m_best[ a_state ];
+        m_kFrom[ a_state * a_k ] = m_from[ a_state ];
+        m_kRank[ a_state * a_k ] = 0;
+        m_kCount[ a_state ] = 1;
+        m_kDone[ a_state ] = false;
+        Arrays.fill( m_kNext, a_state * CountTable.NUM_CHORDS, ( a_state + 1 ) * CountTable.NUM_CHORDS, (byte) 0 );
+    }
+
+    /*
+    NAME
+
+        Allocate - makes the tables big enough
+
+    SYNOPSIS
+
+        void Allocate( int a_slots )
+
+            a_slots --> the number of slots in the melody
+
+    DESCRIPTION
+
+        at least doubles the tables when they grow, keeping the rows already filled,
+            so a melody that grows a measure at a time is not copied every time
+     */
+    private void Allocate( int a_slots )
+    {
+        int size = a_slots * CountTable.NUM_CHORDS;
+        if ( m_best.length < size )
+        {
+            int grown = Math.max( size, m_best.length * 2 );
+            m_best = Arrays.copyOf( m_best, grown );
+            m_from = Arrays.copyOf( m_from, grown );
+        }
+    }
+
+    /*
+    NAME
+
+        AllocateBest - makes the k best tables big enough
+
+    SYNOPSIS
+
+        void AllocateBest( int a_slots, int a_k )
+
+            a_slots --> the number of slots in the melody
+            a_k --> how many harmonies are wanted
+     */
+    private void AllocateBest( int a_slots, int a_k )
+    {
+        int states = a_slots * CountTable.NUM_CHORDS;
+        if ( m_kBest.length < states * a_k )
+        {
+            int grown = Math.max( states * a_k, m_kBest.length * 2 );
+            m_kBest = new double[ grown ];
+            m_kFrom = new byte[ grown ];
+            m_kRank = new byte[ grown ];
+        }
+        if ( m_kCount.length < states )
+        {
+            int grown = Math.max( states, m_kCount.length * 2 );
+            m_kCount = new int[ grown ];
+            m_kDone = new boolean[ grown ];
+            m_kStamp = new int[ grown ];
+            m_kNext = new byte[ grown * CountTable.NUM_CHORDS ];
+            m_chain = new int[ grown / CountTable.NUM_CHORDS ];
+        }
+    }
+}
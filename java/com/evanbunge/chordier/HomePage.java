@@ -1,10 +1,10 @@
 package com.evanbunge.chordier;
 
-import android.content.Context;
 import android.content.Intent;
 import android.os.Bundle;
 import android.support.v7.app.AppCompatActivity;
 import android.view.Gravity;
+import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
 import android.widget.PopupMenu;
@@ -20,9 +20,6 @@ HomePage
  */
 public class HomePage extends AppCompatActivity implements View.OnClickListener
 {
-    // used to provide context to MCMatrix
-    public static Context m_context;
-
     /*
     NAME
 
@@ -36,7 +33,7 @@ public class HomePage extends AppCompatActivity implements View.OnClickListener
 
     DESCRIPTION
 
-        initializes member variable and sets click listeners.
+        sets click listeners.
      */
     @Override
     public void onCreate( Bundle a_savedInstanceState )
@@ -44,11 +41,10 @@ public class HomePage extends AppCompatActivity implements View.OnClickListener
         super.onCreate( a_savedInstanceState );
         setContentView( R.layout.activity_home_screen );
 
-        m_context = getApplicationContext();
-
         findViewById( R.id.load_song ).setOnClickListener( this );
         findViewById( R.id.new_chord ).setOnClickListener( this );
         findViewById( R.id.new_melody ).setOnClickListener( this );
+        findViewById( R.id.transpose_songs ).setOnClickListener( this );
 
         findViewById( R.id.infoButton ).setOnClickListener( new View.OnClickListener()
         {
@@ -75,7 +71,7 @@ public class HomePage extends AppCompatActivity implements View.OnClickListener
 
         deciphers which view was pressed.
         launches intent to KeyPage with information of which activity was chosen
-        or opens a pop up menu to choose a file to load.
+        or opens a pop up menu to choose a file to load or how far to transpose every song.
      */
     @Override
     public void onClick( View a_view )
@@ -96,9 +92,67 @@ public class HomePage extends AppCompatActivity implements View.OnClickListener
                 keySelect.putExtra( "activity", MelodyPage.class );
                 startActivity( keySelect );
                 break;
+            case R.id.transpose_songs:
+                TransposeMenu();
+                break;
         }
     }
 
+    /*
+    NAME
+
+        TransposeMenu - opens a pop up menu to choose how far to transpose every song
+
+    SYNOPSIS
+
+        void TransposeMenu()
+
+    DESCRIPTION
+
+        create pop up menu with an item for each shift, its id is the shift plus an octave.
+        the chosen shift is applied to every saved song on a background thread
+            and the number of songs moved is shown when it is done.
+     */
+    private void TransposeMenu()
+    {
+        PopupMenu menu = new PopupMenu( this, findViewById( R.id.transpose_songs ), Gravity.CENTER );
+        for ( int shift = Transposer.MAX_SHIFT; shift >= Transposer.MIN_SHIFT; shift-- )
+        {
+            if ( shift != 0 )
+            {
+                menu.getMenu()
+                    .add( Menu.NONE, shift + Transposer.OCTAVE, Menu.NONE, Transposer.DescribeShift( shift ) );
+            }
+        }
+        menu.setOnMenuItemClickListener( new PopupMenu.OnMenuItemClickListener()
+        {
+            @Override
+            public boolean onMenuItemClick( MenuItem item )
+            {
+                final int shift = item.getItemId() - Transposer.OCTAVE;
+                new Thread( new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        final int moved = new FileHandler( HomePage.this ).TransposeLibrary( shift );
+                        runOnUiThread( new Runnable()
+                        {
+                            @Override
+                            public void run()
+                            {
+                                Toast.makeText( HomePage.this, "Transposed " + moved + " songs", Toast.LENGTH_SHORT )
+                                     .show();
+                            }
+                        } );
+                    }
+                } ).start();
+                return true;
+            }
+        } );
+        menu.show();
+    }
+
     /*
     NAME
 
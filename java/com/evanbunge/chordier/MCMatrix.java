@@ -1,329 +1,104 @@
 package com.evanbunge.chordier;
 
-import android.util.Log;
-
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
-
 /*
 MCMatrix
-    creates the markov chain model that is used to suggest chords
+    queries the markov chain model that is used to suggest chords
+    every query is given the model to ask, from the ModelHandle of the caller.
+    queries never wait for the model, until it has loaded the model is null
+    and the most common chords are suggested instead
  */
 public class MCMatrix
 {
-    // matrix for suggesting chords in the middle of a progression
-    private static double[][] mid;
-    // matrix for suggesting chords at the end of a progression
-    private static double[][] end;
-
-    // this static block acts as the constructor and initializes the matrices
-    static
-    {
-        end = new double[ 8 * 8 * 8 ][ 7 ];
-        mid = new double[ 8 * 8 * 8 * 8 ][ 7 ];
-        CreateMatrices();
-    }
-
-    /*
-    NAME
-
-        CreateMatrices - populates the matrices with data
-
-    SYNOPSIS
-
-        void CreateMatrices()
-
-    DESCRIPTION
-
-        Reads progressions line by line from asset file.
-        Scans each progression chord by chord and updates the weights of each matrix accordingly.
-        Normalizes the matrices.
-     */
-    private static void CreateMatrices()
-    {
-        try
-        {
-            BufferedReader reader = new BufferedReader( new InputStreamReader( HomePage.m_context.getAssets()
-                                                                                                 .open( "DefaultProgIndex" ) ) );
-            String prog;
-            while ( ( prog = reader.readLine() ) != null )
-            {
-                for ( int i = 5; i < prog.length(); i++ )
-                {
-                    UpdateWeight( Character.getNumericValue( prog.charAt( i - 4 ) ), Character.getNumericValue( prog.charAt( i - 3 ) ), Character.getNumericValue( prog.charAt( i - 2 ) ), Character.getNumericValue( prog.charAt( i - 1 ) ), Character.getNumericValue( prog.charAt( i ) ) );
-                    UpdateWeight( Character.getNumericValue( prog.charAt( i - 5 ) ), Character.getNumericValue( prog.charAt( i - 4 ) ), Character.getNumericValue( prog.charAt( i - 3 ) ), Character.getNumericValue( prog.charAt( i - 2 ) ) );
-                }
-            }
-        }
-        catch ( Exception e )
-        {
-            e.printStackTrace();
-        }
-        NormalizeMatrices();
-    }
+    // suggested while the model is loading: I, IV, V and vi as chord indices
+    private static final int[] FALLBACK_SUGGESTIONS = { 0, 3, 4, 5 };
 
     /*
     NAME
 
-        UpdateWeight - updates the weight of a target chord
-
+        GetChordIndices - gets the indices of the popular chord suggestions for a chord of a progression
     SYNOPSIS
 
-        void UpdateWeight( int a_prev3, int a_prev2, int a_prev, int a_target )
+        int GetChordIndices( ChordModel a_model, int[] a_chords, int a_length, int a_index, int[] a_out )
 
-            a_prev3 --> the chord 3 before the target chord
-            a_prev2 --> the chord 2 before the target chord
-            a_prev --> the chord before the target chord
-            a_target --> the target chord
+            a_model --> the model to ask, null while it is loading
+            a_chords --> chord numbers of the progression, 0 for no chord
+            a_length --> the number of chords in the progression
+            a_index --> the index of the target chord
+            a_out --> receives the suggested chords as chord indices, must hold seven
 
     DESCRIPTION
 
-        calculates the key index and increments the weight of the target chord
-     */
-    private static void UpdateWeight( int a_prev3, int a_prev2, int a_prev, int a_target )
-    {
-        // decrementing target chord converts it from chord number to chord index
-        end[ a_prev3 * 8 * 8 + a_prev2 * 8 + a_prev ][ a_target - 1 ]++;
-    }
+        copies the precomputed ranking from the end matrix of the model for the last
+            chord and from the mid matrix for any other, each looking at as many
+            chords as it was trained on
+        copies the fallback suggestions if the model is not loaded yet
 
-    /*
-    NAME
-
-        UpdateWeight - updates the weight of a target chord
-
-    SYNOPSIS
-
-        void UpdateWeight( int a_prev2, int a_prev, int a_target, int a_next, int a_next2 )
-
-            a_prev2 --> the chord 2 before the target chord
-            a_prev --> the chord before the target chord
-            a_target --> the target chord
-            a_next --> the chord after the target chord
-            a_next2 --> the chord 2 after the target chord
-
-    DESCRIPTION
-
-        calculates the key index and increments the weight of the target chord
-     */
-    private static void UpdateWeight( int a_prev2, int a_prev, int a_target, int a_next, int a_next2 )
-    {
-        // decrementing target chord converts it from chord number to chord index
-        mid[ a_prev2 * 8 * 8 * 8 + a_prev * 8 * 8 + a_next * 8 + a_next2 ][ a_target - 1 ]++;
-    }
-
-    /*
-    NAME
-
-        NormalizeMatrices - converts weights to percentages
-
-    SYNOPSIS
-
-        void NormalizeMatrices()
-
-    DESCRIPTION
-
-        traverses through matrix rows
-        gets sum of columns and divides each by the total to get percentages
-        repeat for both matrices
+    RETURNS
+        the number of suggested chords written to a_out
      */
-    private static void NormalizeMatrices()
+    public static int GetChordIndices( ChordModel a_model, int[] a_chords, int a_length, int a_index, int[] a_out )
     {
-        for ( int i = 0; i < 8 * 8 * 8; i++ )
+        if ( a_model == null )
         {
-            int sum = GetSum( end, i );
-            if ( sum != 0 )
-            {
-                for ( int j = 0; j < 7; j++ )
-                {
-                    end[ i ][ j ] /= sum;
-                }
-            }
-        }
-        for ( int i = 0; i < 8 * 8 * 8 * 8; i++ )
-        {
-            int sum = GetSum( mid, i );
-            if ( sum != 0 )
-            {
-                for ( int j = 0; j < 7; j++ )
-                {
-                    mid[ i ][ j ] /= sum;
-                }
-            }
+            return GetFallback( a_out );
         }
+        return a_model.GetSuggestions( a_chords, a_length, a_index, a_out, 0 );
     }
 
     /*
     NAME
 
-        GetSum - gets the sum of the columns in a row of the matrix
-
+        GetAllChordIndices - gets the popular chord suggestions for every chord of a progression
     SYNOPSIS
 
-        int GetSum( double[][] a_matrix, int a_row )
+        void GetAllChordIndices( ChordModel a_model, int[] a_chords, int a_length, int[] a_out, int[] a_counts )
 
-            a_matrix --> the matrix being normalized
-            a_row --> the row being summed
+            a_model --> the model to ask, null while it is loading
+            a_chords --> chord numbers of the progression, 0 for no chord
+            a_length --> the number of chords in the progression
+            a_out --> receives the suggested chord indices, seven entries per chord
+            a_counts --> receives the number of suggestions for each chord
 
     DESCRIPTION
 
-        traverses each column in the row and accumulates the sum as it goes
-
-    RETURNS
-        the sum of each column in the row
+        takes chord numbers so a progression encoded once can be queried in one pass
+        suggests the same chords as GetChordIndices would for each index
+        copies the fallback suggestions for every chord if the model is not loaded yet
      */
-    private static int GetSum( double[][] a_matrix, int a_row )
+    public static void GetAllChordIndices( ChordModel a_model, int[] a_chords, int a_length, int[] a_out, int[] a_counts )
     {
-        int sum = 0;
-
-        for ( int i = 0; i < 7; i++ )
+        if ( a_model == null )
         {
-            sum += a_matrix[ a_row ][ i ];
+            for ( int i = 0; i < a_length; i++ )
+            {
+                int offset = i * CountTable.NUM_CHORDS;
+                System.arraycopy( FALLBACK_SUGGESTIONS, 0, a_out, offset, FALLBACK_SUGGESTIONS.length );
+                a_counts[ i ] = FALLBACK_SUGGESTIONS.length;
+            }
+            return;
         }
-
-        return sum;
+        a_model.GetSuggestions( a_chords, a_length, a_out, a_counts );
     }
 
     /*
     NAME
 
-        GetChordIndices - gets the indices of the popular chord suggestions given previous chords
-    SYNOPSIS
-
-        List<Integer> GetChordIndices( int a_prev3, int a_prev 2, ine a_prev )
-
-            a_prev3 --> the chord 3 before the target chord
-            a_prev2 --> the chord 2 before the target chord
-            a_prev --> the chord before the target chord
-
-    DESCRIPTION
-
-        converts the given chord indices to chord numbers by incrementing
-        calculates the key index and queries end the matrix for the best chords
-
-    RETURNS
-        the list of suggested chords as chord indices
-     */
-    public static List<Integer> GetChordIndices( int a_prev3, int a_prev2, int a_prev )
-    {
-        a_prev3++;
-        a_prev2++;
-        a_prev++;
-        int index = ( 8 * 8 * a_prev3 ) + ( 8 * a_prev2 ) + a_prev;
-        return ChordsFromMatrix( end, index );
-    }
-
-    /*
-    NAME
+        GetFallback - gets the suggestions used while the model is loading
 
-        GetChordIndices - gets the indices of the popular chord suggestions given the surrounding chords
     SYNOPSIS
 
-        List<Integer> GetChordIndices( int a_prev 2, ine a_prev, int a_next, int a_next2 )
-
-            a_prev2 --> the chord 2 before the target chord
-            a_prev --> the chord before the target chord
-            a_next --> the chord after the target chord
-            a_next2 --> the chord 2 after the target chord
-
-    DESCRIPTION
+        int GetFallback( int[] a_out )
 
-        converts the given chord indices to chord numbers by incrementing
-        calculates the key index and queries the mid matrix for the best chords
+            a_out --> receives the suggested chords as chord indices
 
     RETURNS
-        the list of suggested chords as chord indices
-     */
-    public static List<Integer> GetChordIndices( int a_prev2, int a_prev, int a_next, int a_next2 )
-    {
-        a_prev2++;
-        a_prev++;
-        a_next++;
-        a_next2++;
-        int index = ( a_prev2 * 8 * 8 * 8 ) + ( a_prev * 8 * 8 ) + ( a_next * 8 ) + a_next2;
-        return ChordsFromMatrix( mid, index );
-    }
-
-    /*
-    NAME
-
-        ChordsFromMatrix - finds the most popular chords given an key index
 
-    SYNOPSIS
-
-        List<Integer> ChordsFromMatrix( double[][] a_matrix, int a_index )
-
-    DESCRIPTION
-
-        finds the top three percentages
-        inserts these chords with higher percentages into a list in order of popularity,
-            with the most popular chords at the front.
-
-    RETURNS
-
-        The list of popular chords as chord indices
+        the number of suggested chords written to a_out
      */
-    private static List<Integer> ChordsFromMatrix( double[][] a_matrix, int a_index )
+    private static int GetFallback( int[] a_out )
     {
-        List<Integer> chordIndices = new ArrayList<>();
-        double first = 0;
-        double second = 0;
-        double third = 0;
-        double current;
-
-        // find top three ratios
-        for ( int i = 0; i < 7; i++ )
-        {
-            current = a_matrix[ a_index ][ i ];
-            if ( current > first )
-            {
-                third = second;
-                second = first;
-                first = current;
-            }
-            else if ( current > second && current < first )
-            {
-                third = second;
-                second = current;
-            }
-            else if ( current > third && current < second )
-            {
-                third = current;
-            }
-        }
-        // add chords matching top ratio
-        for ( int j = 0; j < 7; j++ )
-        {
-            if ( a_matrix[ a_index ][ j ] == first )
-            {
-                chordIndices.add( j );
-            }
-        }
-        // add chords matching second
-        if ( second != 0 )
-        {
-            for ( int k = 0; k < 7; k++ )
-            {
-                if ( a_matrix[ a_index ][ k ] == second )
-                {
-                    chordIndices.add( k );
-                }
-            }
-        }
-        // add chords matching third
-        if ( third != 0 )
-        {
-            for ( int n = 0; n < 7; n++ )
-            {
-                if ( a_matrix[ a_index ][ n ] == third )
-                {
-                    chordIndices.add( n );
-                }
-            }
-        }
-        return chordIndices;
+        System.arraycopy( FALLBACK_SUGGESTIONS, 0, a_out, 0, FALLBACK_SUGGESTIONS.length );
+        return FALLBACK_SUGGESTIONS.length;
     }
 
 }
@@ -16,8 +16,10 @@ import android.widget.RadioButton;
 import android.widget.RadioGroup;
 import android.widget.Spinner;
 import android.widget.TextView;
+import android.widget.Toast;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /*
@@ -26,9 +28,24 @@ MelodyPage
  */
 public class MelodyPage extends AppCompatActivity
 {
+    // how many harmonies the next harmony button goes through
+    private static final int NUM_HARMONIES = 5;
+
     // reference to textviews that display the chords for the harmony
     private List<TextView> m_harmonyReference;
+    // the note selector of each sixteenth, in order
+    private List<RadioGroup> m_noteGroups;
     private MelodyUtil m_util;
+    // the chords of the key, names the chord numbers of the harmony
+    private ChordList m_chordList;
+    // the chord number shown by each chord textview, 0 for none
+    private int[] m_shownChords;
+    // the best harmonies of the melody one after another, how many there are,
+    //     0 until asked for, their scores, and which one is shown
+    private int[] m_harmonies;
+    private int m_numHarmonies;
+    private double[] m_harmonyScores;
+    private int m_shownHarmony;
 
     /*
     NAME
@@ -45,8 +62,7 @@ public class MelodyPage extends AppCompatActivity
 
         Calculates the frequency of chords in the harmony using
             the selected item index of the spinner menu
-        Gets the chords for the harmony
-        Sets the chord in the proper textviews from the harmony reference
+        Shows the harmony, which then follows every note that is changed
      */
     private View.OnClickListener suggestlistener = new View.OnClickListener()
     {
@@ -56,20 +72,7 @@ public class MelodyPage extends AppCompatActivity
             // beat==0 half==1 measure==2
             int frequency = ( (Spinner) findViewById( R.id.frequency ) ).getSelectedItemPosition();
             frequency = (int) Math.pow( 2, frequency );
-            List<String> harmony = m_util.GetHarmony( frequency );
-            for ( int i = 0, index = 0; i < m_harmonyReference.size(); i++ )
-            {
-                if ( i % frequency == 0 )
-                {
-                    m_harmonyReference.get( i )
-                                      .setText( harmony.get( index++ ) );
-                }
-                else
-                {
-                    m_harmonyReference.get( i )
-                                      .setText( "" );
-                }
-            }
+            ShowHarmony( frequency );
         }
     };
 
@@ -101,10 +104,14 @@ public class MelodyPage extends AppCompatActivity
 
 
         m_harmonyReference = new ArrayList<>();
+        m_noteGroups = new ArrayList<>();
+        m_shownChords = new int[ 0 ];
+        m_harmonies = new int[ 0 ];
+        m_harmonyScores = new double[ NUM_HARMONIES ];
         String key = getIntent().getStringExtra( "key" );
-        ChordList chordlist = new ChordList( key );
-        m_util = new MelodyUtil( chordlist );
-        CreateNoteLegend( chordlist.GetAllChords() );
+        m_chordList = ChordList.Get( key );
+        m_util = new MelodyUtil( ChordierApp.GetModels( this ).GetCurrent() );
+        CreateNoteLegend( m_chordList.GetAllChords() );
         AddMeasure();
 
         ( (Spinner) findViewById( R.id.frequency ) ).setSelection( 2 );
@@ -183,6 +190,10 @@ public class MelodyPage extends AppCompatActivity
                 ClearAll();
                 return true;
 
+            case R.id.action_harmony:
+                ShowNextHarmony();
+                return true;
+
             case R.id.action_info:
                 ShowInfo();
                 return true;
@@ -242,7 +253,9 @@ public class MelodyPage extends AppCompatActivity
         sets up a grid of sixteen radio groups (1/16 beats) of seven radio buttons (notes) each
             as four groups of four
         adds a textview for the chords above each quarter beat and a counter underneath for 1/16ths
-        adds references to notegroups in utility
+        adds a sixteenth to the melody in the utility for each notegroup,
+            which writes its checked note there whenever it changes
+            and updates the harmony if one is shown
      */
     private void AddMeasure()
     {
@@ -281,7 +294,18 @@ public class MelodyPage extends AppCompatActivity
             {
                 RadioGroup noteGroup = new RadioGroup( this );
                 notegrid.addView( noteGroup );
-                m_util.Add( noteGroup );
+                m_noteGroups.add( noteGroup );
+                final int index = m_util.Add();
+                noteGroup.setOnCheckedChangeListener( new RadioGroup.OnCheckedChangeListener()
+                {
+                    @Override
+                    public void onCheckedChanged( RadioGroup a_radioGroup, int a_checkedId )
+                    {
+                        // the id of each note is its note of the scale, -1 when cleared
+                        m_util.SetNote( index, a_checkedId < 0 ? MelodyUtil.NO_NOTE : a_checkedId );
+                        UpdateHarmony();
+                    }
+                } );
                 for ( int k = 0; k < 7; k++ )
                 {
                     ToggleableRadioButton note = new ToggleableRadioButton( this );
@@ -297,6 +321,7 @@ public class MelodyPage extends AppCompatActivity
             beat.addView( count );
 
         }
+        UpdateHarmony();
     }
 
     /*
@@ -324,9 +349,139 @@ public class MelodyPage extends AppCompatActivity
                 m_harmonyReference.remove( m_harmonyReference.size() - 1 );
                 for ( int j = 0; j < 4; j++ )
                 {
+                    m_noteGroups.remove( m_noteGroups.size() - 1 );
                     m_util.Delete();
                 }
             }
+            UpdateHarmony();
+        }
+    }
+
+    /*
+    NAME
+
+        ShowHarmony - shows the harmony of the melody
+
+    SYNOPSIS
+
+        void ShowHarmony( int a_freq )
+
+            a_freq --> the frequency of beats per chord
+
+    DESCRIPTION
+
+        gets the best harmony from the utility and shows it, the other harmonies
+            are found again when next asked for
+     */
+    private void ShowHarmony( int a_freq )
+    {
+        int[] harmony = m_util.GetHarmony( a_freq );
+        m_numHarmonies = 0;
+        ShowChords( harmony, 0, harmony.length, a_freq );
+    }
+
+    /*
+    NAME
+
+        ShowNextHarmony - shows the next of the best harmonies
+
+    SYNOPSIS
+
+        void ShowNextHarmony()
+
+    DESCRIPTION
+
+        the first time after the melody changed, gets the NUM_HARMONIES best harmonies
+            from the utility in one pass, then each press shows the next one in turn
+            without working anything out again.
+        tells the user to suggest chords first if no harmony is shown.
+     */
+    private void ShowNextHarmony()
+    {
+        int freq = m_util.GetFrequency();
+        if ( freq == 0 )
+        {
+            Toast.makeText( this, "Suggest chords first.", Toast.LENGTH_SHORT )
+                 .show();
+            return;
+        }
+        int slots = m_util.GetHarmony( freq ).length;
+        if ( m_numHarmonies == 0 )
+        {
+            if ( m_harmonies.length < NUM_HARMONIES * slots )
+            {
+                m_harmonies = new int[ NUM_HARMONIES * slots ];
+            }
+            m_numHarmonies = m_util.GetHarmonies( freq, NUM_HARMONIES, m_harmonies, m_harmonyScores );
+            m_shownHarmony = 0;
+            if ( m_numHarmonies == 0 )
+            {
+                return;
+            }
+        }
+        m_shownHarmony = ( m_shownHarmony + 1 ) % m_numHarmonies;
+        ShowChords( m_harmonies, m_shownHarmony * slots, slots, freq );
+        Toast.makeText( this, "Harmony " + ( m_shownHarmony + 1 ) + " of " + m_numHarmonies, Toast.LENGTH_SHORT )
+             .show();
+    }
+
+    /*
+    NAME
+
+        ShowChords - shows a harmony above the melody
+
+    SYNOPSIS
+
+        void ShowChords( int[] a_harmony, int a_offset, int a_slots, int a_freq )
+
+            a_harmony --> chord numbers of the harmony
+            a_offset --> where in a_harmony the harmony starts
+            a_slots --> the number of chords in the harmony
+            a_freq --> the frequency of beats per chord
+
+    DESCRIPTION
+
+        sets the chord names in the proper textviews from the harmony reference,
+            a chord above the first beat of each slot.
+        only textviews whose chord changed are set, so a note edit that changes
+            one chord touches one textview.
+     */
+    private void ShowChords( int[] a_harmony, int a_offset, int a_slots, int a_freq )
+    {
+        if ( m_shownChords.length != m_harmonyReference.size() )
+        {
+            m_shownChords = Arrays.copyOf( m_shownChords, m_harmonyReference.size() );
+        }
+        for ( int i = 0; i < m_harmonyReference.size(); i++ )
+        {
+            int chord = i % a_freq == 0 && i / a_freq < a_slots ? a_harmony[ a_offset + i / a_freq ] : 0;
+            if ( chord != m_shownChords[ i ] )
+            {
+                m_harmonyReference.get( i )
+                                  .setText( chord == 0 ? "" : m_chordList.GetChord( chord - 1 ) );
+                m_shownChords[ i ] = chord;
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        UpdateHarmony - updates the shown harmony after the melody changed
+
+    SYNOPSIS
+
+        void UpdateHarmony()
+
+    DESCRIPTION
+
+        does nothing until a harmony has been suggested
+     */
+    private void UpdateHarmony()
+    {
+        if ( m_util.GetFrequency() != 0 )
+        {
+            ShowHarmony( m_util.GetFrequency() );
         }
     }
 
@@ -341,17 +496,19 @@ public class MelodyPage extends AppCompatActivity
 
     DESCRIPTION
 
+        forgets the harmony so clearing the notes does not update it
         deletes all extra measures
         clears all checked radio buttons and chord textviews
      */
     private void ClearAll()
     {
+        m_util.ClearHarmony();
+        m_numHarmonies = 0;
         while ( m_harmonyReference.size() > 4 )
         {
             DeleteMeasure();
         }
-        List<RadioGroup> ns = m_util.GetNoteSelectors();
-        for ( RadioGroup rg : ns )
+        for ( RadioGroup rg : m_noteGroups )
         {
             rg.clearCheck();
         }
@@ -359,6 +516,7 @@ public class MelodyPage extends AppCompatActivity
         {
             tv.setText( "" );
         }
+        Arrays.fill( m_shownChords, 0 );
     }
 
     /*
@@ -410,7 +568,7 @@ public class MelodyPage extends AppCompatActivity
     DESCRIPTION
 
         allows the radio button to be toggled off on press
-        also clears all chords so they don't reflect the old melody
+        the note group listener then updates the harmony to the new melody
      */
     private class ToggleableRadioButton extends RadioButton
     {
@@ -434,10 +592,6 @@ public class MelodyPage extends AppCompatActivity
             {
                 setChecked( true );
             }
-            for ( TextView tv : m_harmonyReference )
-            {
-                tv.setText( "" );
-            }
         }
     }
 
@@ -1,17 +1,54 @@
 package com.evanbunge.chordier;
 
-import android.util.Log;
-import android.widget.RadioGroup;
-
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.util.Random;
 
+/*
+MelodyUtil
+    holds the melody and picks the chords that harmonize it.
+    the melody is one byte per sixteenth note, the note of the scale 0 to 6 or
+    NO_NOTE, written by the note selectors of MelodyPage as they are checked.
+    Harmonize works on the notes alone, so it needs no views and can run on
+    any thread.
+
+    the chords are picked together by Harmonizer, weighing how well each
+    chord fits the notes against how well it follows the chord before it.
+
+    once a harmony has been asked for, the weights of every slot and the
+    tables of the harmonizer are kept. a changed note only marks its slot, and
+    the next slot if it is the last note before it, and GetHarmony recomputes
+    those weights and decodes again from the first marked slot, so the harmony
+    can follow every tap however long the melody is.
+ */
 public class MelodyUtil
 {
-    private List<RadioGroup> m_noteSelectors;
-    private ChordList m_chordList;
+    // a sixteenth with no note
+    public static final byte NO_NOTE = - 1;
+    // sixteenth notes in a beat
+    public static final int NOTES_PER_BEAT = 4;
+    // the melody starts with room for this many sixteenths and doubles when full
+    private static final int INITIAL_CAPACITY = 64;
+    // more popular chords like 1,4,5, and 6 are given an advantage
+    private static final int[] BASE_WEIGHTS = { 2, 0, 0, 2, 2, 1, - 1 };
+
+    // the note of each sixteenth, only the first m_length are used
+    private byte[] m_notes;
+    private int m_length;
+    // the model of the chosen genre, asked for every chord
+    private ModelHandle m_modelHandle;
+    // beats per chord of the kept harmony, 0 until a harmony is asked for
+    private int m_freq;
+    // the model the kept harmony was picked with, and the harmonizer made from it
+    private ChordModel m_model;
+    private Harmonizer m_harmonizer;
+    // the chord number of each slot of the kept harmony
+    private int[] m_harmony;
+    // the weights of each chord for each slot, seven per slot
+    private int[] m_weights;
+    // slots whose notes changed since their weights were computed
+    private boolean[] m_stale;
+    // the first and last stale slot, m_staleFrom is past the end if none
+    private int m_staleFrom;
+    private int m_staleTo;
 
     /*
     NAME
@@ -20,72 +57,176 @@ public class MelodyUtil
 
     SYNOPSIS
 
-        MelodyUtil( String a_key )
+        MelodyUtil( ModelHandle a_modelHandle )
 
-            a_key --> the key to build the progression in
+            a_modelHandle --> the model to harmonize with
 
     DESCRIPTION
 
         initializes the member variables
      */
-    public MelodyUtil( ChordList a_chordList )
+    public MelodyUtil( ModelHandle a_modelHandle )
     {
-        m_noteSelectors = new ArrayList<>();
-        m_chordList = a_chordList;
+        m_modelHandle = a_modelHandle;
+        m_notes = new byte[ INITIAL_CAPACITY ];
+        m_length = 0;
+        ClearHarmony();
     }
 
     /*
     NAME
 
-        Add - adds a notegroup to the reference list
+        Add - adds a sixteenth to the end of the melody
 
     SYNOPSIS
 
-        void Add()
+        int Add()
 
     DESCRIPTION
 
-        adds radiogroup to the reference list
+        adds a sixteenth with no note, doubling the array if it is full
+
+    RETURNS
+
+        the index of the new sixteenth, for its note selector to write to
      */
-    public void Add( RadioGroup a_note )
+    public int Add()
     {
-        m_noteSelectors.add( a_note );
+        if ( m_length == m_notes.length )
+        {
+            m_notes = Arrays.copyOf( m_notes, m_notes.length * 2 );
+        }
+        m_notes[ m_length ] = NO_NOTE;
+        return m_length++;
     }
 
     /*
     NAME
 
-        Delete - Deletes a notegroup to the reference list
+        Delete - deletes the last sixteenth of the melody
 
     SYNOPSIS
 
         void Delete()
+     */
+    public void Delete()
+    {
+        m_length--;
+    }
+
+    /*
+    NAME
+
+        SetNote - sets the note of a sixteenth
+
+    SYNOPSIS
+
+        void SetNote( int a_index, int a_note )
+
+            a_index --> the index of the sixteenth
+            a_note --> the note of the scale 0 to 6, or NO_NOTE
 
     DESCRIPTION
 
-        deletes the last radiogroup from the reference list
+        marks the slot of the note for the next GetHarmony, and the next slot
+            too if the note is the last before it, as its weights depend on it
      */
-    public void Delete()
+    public void SetNote( int a_index, int a_note )
+    {
+        m_notes[ a_index ] = (byte) a_note;
+        if ( m_freq == 0 )
+        {
+            return;
+        }
+        int subdivision = m_freq * NOTES_PER_BEAT;
+        int slot = a_index / subdivision;
+        MarkStale( slot );
+        if ( a_index % subdivision == subdivision - 1 )
+        {
+            MarkStale( slot + 1 );
+        }
+    }
+
+    /*
+    NAME
+
+        MarkStale - marks a slot of the kept harmony for recomputing
+
+    SYNOPSIS
+
+        void MarkStale( int a_slot )
+
+            a_slot --> the slot, ignored if the harmony has no such slot yet
+     */
+    private void MarkStale( int a_slot )
+    {
+        if ( a_slot < m_stale.length )
+        {
+            m_stale[ a_slot ] = true;
+            m_staleFrom = Math.min( m_staleFrom, a_slot );
+            m_staleTo = Math.max( m_staleTo, a_slot );
+        }
+    }
+
+    /*
+    NAME
+
+        GetFrequency - gets the beats per chord of the kept harmony
+
+    SYNOPSIS
+
+        int GetFrequency()
+
+    RETURNS
+
+        the frequency last passed to GetHarmony, 0 if there is no harmony
+     */
+    public int GetFrequency()
     {
-        m_noteSelectors.remove( m_noteSelectors.size() - 1 );
+        return m_freq;
     }
 
     /*
     NAME
 
-        GetNoteSelectors - adds a notegroup to the reference list
+        ClearHarmony - forgets the kept harmony
 
     SYNOPSIS
 
-        List<RadioGroup> GetNoteSelectors()
+        void ClearHarmony()
+
+    DESCRIPTION
+
+        the next GetHarmony starts from scratch, until then notes only change the melody
+     */
+    public void ClearHarmony()
+    {
+        m_freq = 0;
+        m_model = null;
+        m_harmonizer = null;
+        m_harmony = new int[ 0 ];
+        m_weights = new int[ 0 ];
+        m_stale = new boolean[ 0 ];
+        m_staleFrom = Integer.MAX_VALUE;
+        m_staleTo = - 1;
+    }
+
+    /*
+    NAME
+
+        GetLength - gets the number of sixteenths in the melody
+
+    SYNOPSIS
+
+        int GetLength()
 
     RETURNS
 
-        the list of note selectors (radiogroups)
+        the number of sixteenths
      */
-    public List<RadioGroup> GetNoteSelectors()
+    public int GetLength()
     {
-        return m_noteSelectors;
+        return m_length;
     }
 
     /*
@@ -95,34 +236,136 @@ public class MelodyUtil
 
     SYNOPSIS
 
-        List<String> GetHarmony( int a_freq )
+        int[] GetHarmony( int a_freq )
 
             a_freq --> the frequency of beats per chord
                             1 -> beat   2 -> half   3 -> measure
 
     DESCRIPTION
 
-        calculates the weight of each chord
-        uses those weights to pick the best chord for the melody
+        harmonizes the melody with the model of the chosen genre, like Harmonize.
+        a new frequency or a newly loaded model starts a new harmony. otherwise slots
+            added to the melody and slots marked by SetNote have their weights
+            recomputed and the harmonizer decodes again from the first of them,
+            keeping the rows before it.
 
     RETURNS
 
-        a list containing the chords of the harmony
+        the chord numbers 1 to 7 of the harmony, kept by this class and changed
+            by the next call
      */
-    public List<String> GetHarmony( int a_freq )
+    public int[] GetHarmony( int a_freq )
     {
-        List<String> harmony = new ArrayList<>();
-        // multiply number of beats by four to get number of 1/16th notes
-        int subdivision = a_freq * 4;
+        int subdivision = a_freq * NOTES_PER_BEAT;
+        int slots = m_length / subdivision;
+        ChordModel model = m_modelHandle.GetModel();
+        if ( a_freq != m_freq || model != m_model || m_harmonizer == null )
+        {
+            ClearHarmony();
+            m_freq = a_freq;
+            m_model = model;
+            m_harmonizer = new Harmonizer( model );
+        }
+        boolean resized = slots != m_harmony.length;
+        if ( resized )
+        {
+            int kept = Math.min( slots, m_harmony.length );
+            m_harmony = Arrays.copyOf( m_harmony, slots );
+            m_weights = Arrays.copyOf( m_weights, slots * CountTable.NUM_CHORDS );
+            m_stale = Arrays.copyOf( m_stale, slots );
+            for ( int i = kept; i < slots; i++ )
+            {
+                MarkStale( i );
+            }
+            m_staleTo = Math.min( m_staleTo, slots - 1 );
+        }
+        if ( ! resized && m_staleFrom > m_staleTo )
+        {
+            return m_harmony;
+        }
 
-        // chord suggested per i
-        for ( int i = 0; i < m_noteSelectors.size() / subdivision; i++ )
+        for ( int i = m_staleFrom; i <= m_staleTo; i++ )
         {
-            int anchor = subdivision * i;
-            int[] chordWeights = GetWeights( anchor, subdivision );
+            if ( m_stale[ i ] )
+            {
+                GetWeights( m_notes, subdivision * i, subdivision, m_weights, i * CountTable.NUM_CHORDS );
+                m_stale[ i ] = false;
+            }
+        }
+        // a shorter melody with nothing marked keeps every row and only follows its new end back
+        m_harmonizer.Decode( m_weights, slots, Math.min( m_staleFrom, slots ), m_harmony );
+        m_staleFrom = Integer.MAX_VALUE;
+        m_staleTo = - 1;
+        return m_harmony;
+    }
+
+    /*
+    NAME
 
-            harmony.add( CalculateChord( chordWeights, harmony ) );
+        GetHarmonies - gets the best few harmonies for the current melody
+
+    SYNOPSIS
+
+        int GetHarmonies( int a_freq, int a_k, int[] a_out, double[] a_scores )
+
+            a_freq --> the frequency of beats per chord
+            a_k --> how many harmonies to find, at most Harmonizer.MAX_HARMONIES
+            a_out --> receives the chord numbers 1 to 7 of each harmony, one slot per a_freq
+                      beats, best first, must hold a_k times the length of GetHarmony
+            a_scores --> receives the score of each harmony, must hold a_k
+
+    DESCRIPTION
+
+        brings the kept weights up to date with GetHarmony, then has the harmonizer
+            find all the harmonies in one pass. the first is the one GetHarmony gives.
+
+    RETURNS
+
+        the number of harmonies found
+     */
+    public int GetHarmonies( int a_freq, int a_k, int[] a_out, double[] a_scores )
+    {
+        int[] harmony = GetHarmony( a_freq );
+        return m_harmonizer.DecodeBest( m_weights, harmony.length, harmony.length, a_k, a_out, a_scores );
+    }
+
+    /*
+    NAME
+
+        Harmonize - picks a chord for every part of a melody
+
+    SYNOPSIS
+
+        int[] Harmonize( ChordModel a_model, byte[] a_notes, int a_length, int a_freq )
+
+            a_model --> the model to harmonize with, null while it is loading
+            a_notes --> the note of each sixteenth, 0 to 6 or NO_NOTE
+            a_length --> the number of sixteenths in the melody
+            a_freq --> the number of beats per chord
+
+    DESCRIPTION
+
+        calculates the weight of each chord for each part of the melody
+        has a Harmonizer pick the best sequence of chords for those weights
+        reads nothing but its arguments, so it can run on any thread,
+            and gives the same harmony for the same melody every time
+
+    RETURNS
+
+        the chord numbers 1 to 7 of the harmony, one per a_freq beats
+     */
+    public static int[] Harmonize( ChordModel a_model, byte[] a_notes, int a_length, int a_freq )
+    {
+        // multiply number of beats by four to get number of 1/16th notes
+        int subdivision = a_freq * NOTES_PER_BEAT;
+        int[] harmony = new int[ a_length / subdivision ];
+        int[] chordWeights = new int[ harmony.length * CountTable.NUM_CHORDS ];
+
+        for ( int i = 0; i < harmony.length; i++ )
+        {
+            GetWeights( a_notes, subdivision * i, subdivision, chordWeights, i * CountTable.NUM_CHORDS );
         }
+        new Harmonizer( a_model ).Decode( chordWeights, harmony.length, 0, harmony );
         return harmony;
     }
 
@@ -133,42 +376,38 @@ public class MelodyUtil
 
     SYNOPSIS
 
-        int[] GetWeights( int a_anchor, int a_subdivision )
+        void GetWeights( byte[] a_notes, int a_anchor, int a_subdivision, int[] a_out, int a_offset )
 
+            a_notes --> the note of each sixteenth
             a_anchor --> the starting point for the chord
             a_subdivision --> how many notes to include
+            a_out --> receives the weight of each chord
+            a_offset --> where in a_out the seven weights go
 
     DESCRIPTION
 
-        initializes an array of chord weights
+        starts from the base weight of each chord
         loops each note in the given range and adds to the weights of the appropriate chords
             adds 1 for each chord that note appears in
             adds 2 if note appears on downbeat
             adds 1 if note appears on upbeat
             adds 1 to adjacent chords if passing
-
-    RETURNS
-
-        a list of the weight of each chord
      */
-    private int[] GetWeights( int a_anchor, int a_subdivision )
+    static void GetWeights( byte[] a_notes, int a_anchor, int a_subdivision, int[] a_out, int a_offset )
     {
-        int prev = a_anchor > 0 ? m_noteSelectors.get( a_anchor - 1 )
-                                                 .getCheckedRadioButtonId() : - 1;
-        // more popular chords like 1,4,5, and 6 are given an advantage
-        int[] chordWeights = { 2, 0, 0, 2, 2, 1, - 1 };
+        int prev = a_anchor > 0 ? a_notes[ a_anchor - 1 ] : NO_NOTE;
+        System.arraycopy( BASE_WEIGHTS, 0, a_out, a_offset, BASE_WEIGHTS.length );
         // j is how many 1/16ths to sum
         for ( int j = 0; j < a_subdivision; j++ )
         {
-            int noteIndex = m_noteSelectors.get( a_anchor + j )
-                                           .getCheckedRadioButtonId();
+            int noteIndex = a_notes[ a_anchor + j ];
             if ( noteIndex >= 0 )
             {
-                if ( ( j % 4 ) % 2 != 0 && noteIndex != prev && prev != - 1 )
+                if ( ( j % 4 ) % 2 != 0 && noteIndex != prev && prev != NO_NOTE )
                 {
                     // treat as neighboring or passing
-                    chordWeights[ ( noteIndex + 1 ) % 7 ] += 1;
-                    chordWeights[ ( noteIndex + 6 ) % 7 ] += 1;
+                    a_out[ a_offset + ( noteIndex + 1 ) % 7 ] += 1;
+                    a_out[ a_offset + ( noteIndex + 6 ) % 7 ] += 1;
                 }
                 else
                 {
@@ -179,105 +418,18 @@ public class MelodyUtil
                     if ( j % 4 == 2 ) baseWeight += 1;
 
                     // add to each chord the note appears in
-                    chordWeights[ noteIndex ] += baseWeight + 2;
+                    a_out[ a_offset + noteIndex ] += baseWeight + 2;
                     // third up
-                    chordWeights[ ( noteIndex + 2 ) % 7 ] += baseWeight + 1;
+                    a_out[ a_offset + ( noteIndex + 2 ) % 7 ] += baseWeight + 1;
                     // fifth up
-                    chordWeights[ ( noteIndex + 4 ) % 7 ] += baseWeight + 1;
+                    a_out[ a_offset + ( noteIndex + 4 ) % 7 ] += baseWeight + 1;
                     // third down
-                    chordWeights[ ( noteIndex + 5 ) % 7 ] += baseWeight + 1;
+                    a_out[ a_offset + ( noteIndex + 5 ) % 7 ] += baseWeight + 1;
                     // fifth down
-                    chordWeights[ ( noteIndex + 3 ) % 7 ] += baseWeight + 1;
+                    a_out[ a_offset + ( noteIndex + 3 ) % 7 ] += baseWeight + 1;
                 }
             }
             prev = noteIndex;
         }
-        return chordWeights;
-    }
-
-    /*
-    NAME
-
-        CalculateChord - constructor for ChordUtil class
-
-    SYNOPSIS
-
-        String CalculateChord( int[] a_chordWeights, List<String> a_harmony )
-
-            a_chordWeights --> the weights of each chord
-            a_harmony --> the current progression
-
-    DESCRIPTION
-
-        finds the maximum weight
-        checks if more than one chord ties
-        if there is a tie then the chords are compared to popular chords found from
-            MCMatrix and the more popular chord is chosen
-        if no matches are found with the popular chords, then a random one is chosen
-
-    RETURNS
-
-        the chord that is the best fit for the progression
-     */
-    private String CalculateChord( int[] a_chordWeights, List<String> a_harmony )
-    {
-        int chordIndex = 0;
-        int maxWeight = 0;
-
-        // find maximum weight
-        for ( int k = 0; k < 7; k++ )
-        {
-            if ( a_chordWeights[ k ] > maxWeight )
-            {
-                maxWeight = a_chordWeights[ k ];
-                chordIndex = k;
-            }
-        }
-
-        // count how many indexes match max weight
-        int numCollisions = 0;
-        for ( int n = 0; n < 7; n++ )
-        {
-            if ( a_chordWeights[ n ] == maxWeight )
-            {
-                numCollisions++;
-            }
-        }
-
-        if ( numCollisions <= 1 )
-        {
-            return m_chordList.GetChord( chordIndex );
-        }
-        else
-        {
-            // get popular chords
-            int index = a_harmony.size();
-            int prev3 = index - 3 < 0 ? - 1 : m_chordList.GetChordIndex( a_harmony.get( index - 3 ) );
-            int prev2 = index - 2 < 0 ? - 1 : m_chordList.GetChordIndex( a_harmony.get( index - 2 ) );
-            int prev1 = index - 1 < 0 ? - 1 : m_chordList.GetChordIndex( a_harmony.get( index - 1 ) );
-            List<Integer> popularChords = MCMatrix.GetChordIndices( prev3, prev2, prev1 );
-
-            // check if any popular chords match the max weight
-            for ( int chord : popularChords )
-            {
-                if ( a_chordWeights[ chord ] == maxWeight )
-                {
-                    return m_chordList.GetChord( chord );
-                }
-            }
-
-            // does not match any popular chords, choose randomly
-            List<Integer> maxWeightChords = new ArrayList<>();
-            for ( int l = 0; l < 7; l++ )
-            {
-                if ( a_chordWeights[ l ] == maxWeight )
-                {
-                    maxWeightChords.add( l );
-                }
-            }
-            Random rn = new Random();
-            int randChoice = rn.nextInt( maxWeightChords.size() );
-            return m_chordList.GetChord( maxWeightChords.get( randChoice ) );
-        }
     }
 }
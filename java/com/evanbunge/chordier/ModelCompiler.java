@@ -0,0 +1,129 @@
+package com.evanbunge.chordier;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/*
+ModelCompiler
+    build time tool that compiles a progression corpus into a model file
+    the app reads at startup without parsing or ranking anything
+
+    usage: java com.evanbunge.chordier.ModelCompiler [-end <order>] [-mid <order>] [-threads <n>]
+                                                      [-smoothing <method>] [-k <k>] [-bits <bits>] <corpus> <model>
+        e.g. ModelCompiler assets/DefaultProgIndex assets/DefaultModel
+        -end and -mid set how many chords of context each table looks at
+        -threads sets how many shards of the corpus are counted at once,
+            the model written is the same for any number of threads
+        -smoothing is none, add-k, witten-bell or kneser-ney, kneser-ney by default
+        -k sets the amount add-k adds to every count
+        -bits is 8 or 16 to store log probabilities of that size, 16 by default,
+            or 0 to keep the full counts. a quantized model is checked with
+            ModelVerifier and not written if it orders any context differently
+ */
+public class ModelCompiler
+{
+    /*
+    NAME
+
+        main - compiles the corpus given on the command line
+
+    SYNOPSIS
+
+        void main( String[] a_args )
+
+            a_args --> the options, the corpus file and the model file to write
+
+    DESCRIPTION
+
+        reads the orders, thread count, smoothing and bits from the options
+        trains a model from the corpus with ModelTrainer, smooths and quantizes it
+            and writes it in the compiled layout
+     */
+    public static void main( String[] a_args ) throws Exception
+    {
+        int endOrder = ChordModel.DEFAULT_END_ORDER;
+        int midOrder = ChordModel.DEFAULT_MID_ORDER;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int smoothing = ChordModel.DEFAULT_SMOOTHING;
+        float k = ChordModel.DEFAULT_ADD_K;
+        int bits = ChordModel.DEFAULT_BITS;
+        int arg = 0;
+        while ( arg + 1 < a_args.length && a_args[ arg ].startsWith( "-" ) )
+        {
+            if ( a_args[ arg ].equals( "-end" ) )
+            {
+                endOrder = Integer.parseInt( a_args[ arg + 1 ] );
+            }
+            else if ( a_args[ arg ].equals( "-mid" ) )
+            {
+                midOrder = Integer.parseInt( a_args[ arg + 1 ] );
+            }
+            else if ( a_args[ arg ].equals( "-threads" ) )
+            {
+                threads = Integer.parseInt( a_args[ arg + 1 ] );
+            }
+            else if ( a_args[ arg ].equals( "-smoothing" ) )
+            {
+                smoothing = Arrays.asList( CountTable.SMOOTHING_NAMES ).indexOf( a_args[ arg + 1 ] );
+                if ( smoothing < 0 )
+                {
+                    System.err.println( "unknown smoothing " + a_args[ arg + 1 ] + ", expected one of "
+                                                + Arrays.toString( CountTable.SMOOTHING_NAMES ) );
+                    System.exit( 1 );
+                }
+            }
+            else if ( a_args[ arg ].equals( "-k" ) )
+            {
+                k = Float.parseFloat( a_args[ arg + 1 ] );
+            }
+            else if ( a_args[ arg ].equals( "-bits" ) )
+            {
+                bits = Integer.parseInt( a_args[ arg + 1 ] );
+            }
+            else
+            {
+                break;
+            }
+            arg += 2;
+        }
+        if ( a_args.length - arg != 2 )
+        {
+            System.err.println( "usage: ModelCompiler [-end <order>] [-mid <order>] [-threads <n>]"
+                                        + " [-smoothing <method>] [-k <k>] [-bits <bits>] <corpus> <model>" );
+            System.exit( 1 );
+        }
+        String corpusFile = a_args[ arg ];
+        String modelFile = a_args[ arg + 1 ];
+
+        ModelTrainer trainer = new ModelTrainer( endOrder, midOrder, ModelTrainer.DEFAULT_SHARD_SIZE );
+        ChordModel model = trainer.Train( new File( corpusFile ), threads );
+        model.Smooth( smoothing, k );
+        if ( bits != 0 )
+        {
+            ChordModel full = model.Copy();
+            model.Quantize( bits );
+            if ( ModelVerifier.Verify( full, model, System.out ) != 0 )
+            {
+                System.err.println( "the " + bits + " bit model orders some contexts differently, not written" );
+                System.exit( 1 );
+            }
+        }
+
+        OutputStream out = new BufferedOutputStream( new FileOutputStream( modelFile ) );
+        try
+        {
+            model.Write( out );
+        }
+        finally
+        {
+            out.close();
+        }
+        System.out.println( "wrote " + modelFile + " (model version " + ChordModel.VERSION
+                                    + ", end order " + endOrder + ", mid order " + midOrder
+                                    + ", " + CountTable.SMOOTHING_NAMES[ smoothing ] + " smoothing"
+                                    + ( bits != 0 ? ", " + bits + " bit" : "" ) + ")" );
+    }
+}
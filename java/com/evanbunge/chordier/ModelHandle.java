@@ -0,0 +1,252 @@
+package com.evanbunge.chordier;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+ModelHandle
+    the model of one genre, handed out by ModelRegistry to whatever queries it.
+
+    the published model is a frozen snapshot held in an atomic reference.
+    queries read the reference once and never lock. retraining copies the
+    snapshot on the loader thread, changes the copy and swaps it in, so a
+    query sees either the old model or the new one, never a mix.
+ */
+public class ModelHandle
+{
+    private final String m_genre;
+    // the thread that loads and retrains the model
+    private final Executor m_executor;
+    // the published snapshot, null until loading finishes
+    private final AtomicReference<ChordModel> m_model = new AtomicReference<>();
+    // listeners waiting for the model
+    private final List<Listener> m_listeners = new ArrayList<>();
+    // result of the background load
+    private Future<ChordModel> m_future;
+
+    /*
+    Listener
+        told once when the model is ready, on the loader thread
+     */
+    public interface Listener
+    {
+        void OnModelReady( ChordModel a_model );
+    }
+
+    /*
+    Retrainer
+        changes a private copy of the model before it is published
+     */
+    public interface Retrainer
+    {
+        void Retrain( ChordModel a_model );
+    }
+
+    /*
+    NAME
+
+        ModelHandle - constructor for ModelHandle class
+
+    SYNOPSIS
+
+        ModelHandle( String a_genre, Executor a_executor )
+
+            a_genre --> the genre of the model
+            a_executor --> the single thread that loads and retrains the model
+     */
+    ModelHandle( String a_genre, Executor a_executor )
+    {
+        m_genre = a_genre;
+        m_executor = a_executor;
+    }
+
+    /*
+    NAME
+
+        GetGenre - gets the genre of the model
+
+    SYNOPSIS
+
+        String GetGenre()
+
+    RETURNS
+
+        the genre name
+     */
+    public String GetGenre()
+    {
+        return m_genre;
+    }
+
+    /*
+    NAME
+
+        GetModel - gets the model if it is ready
+
+    SYNOPSIS
+
+        ChordModel GetModel()
+
+    DESCRIPTION
+
+        the model returned is frozen and stays valid after a retrain,
+            a caller making several queries should get it once and keep it
+
+    RETURNS
+
+        the current snapshot, or null if it is still loading
+     */
+    public ChordModel GetModel()
+    {
+        return m_model.get();
+    }
+
+    /*
+    NAME
+
+        IsReady - tells if the model has finished loading
+
+    SYNOPSIS
+
+        boolean IsReady()
+
+    RETURNS
+
+        true once the model is loaded
+     */
+    public boolean IsReady()
+    {
+        return m_model.get() != null;
+    }
+
+    /*
+    NAME
+
+        GetFuture - gets the result of the background load
+
+    SYNOPSIS
+
+        Future<ChordModel> GetFuture()
+
+    RETURNS
+
+        the future result of the load
+     */
+    public synchronized Future<ChordModel> GetFuture()
+    {
+        return m_future;
+    }
+
+    /*
+    NAME
+
+        AddListener - asks to be told when the model is ready
+
+    SYNOPSIS
+
+        void AddListener( Listener a_listener )
+
+            a_listener --> the listener to tell
+
+    DESCRIPTION
+
+        if the model is already loaded the listener is told right away on this thread,
+            otherwise it is told on the loader thread when loading finishes
+     */
+    public void AddListener( Listener a_listener )
+    {
+        synchronized ( m_listeners )
+        {
+            if ( m_model.get() == null )
+            {
+                m_listeners.add( a_listener );
+                return;
+            }
+        }
+        a_listener.OnModelReady( m_model.get() );
+    }
+
+    /*
+    NAME
+
+        Retrain - publishes a changed copy of the model
+
+    SYNOPSIS
+
+        void Retrain( Retrainer a_retrainer )
+
+            a_retrainer --> changes the copy
+
+    DESCRIPTION
+
+        on the loader thread, copies the current snapshot, lets the retrainer change it,
+            freezes it and swaps it in. queries keep using the old snapshot until then.
+        retrains run one at a time in the order they were asked for, each on the
+            result of the one before, so none is lost.
+        the model must have been loaded.
+     */
+    public void Retrain( final Retrainer a_retrainer )
+    {
+        m_executor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                ChordModel next = m_model.get().Copy();
+                a_retrainer.Retrain( next );
+                next.Freeze();
+                m_model.set( next );
+            }
+        } );
+    }
+
+    /*
+    NAME
+
+        SetFuture - keeps the result of the background load
+
+    SYNOPSIS
+
+        void SetFuture( Future<ChordModel> a_future )
+
+            a_future --> the load submitted by ModelRegistry
+     */
+    synchronized void SetFuture( Future<ChordModel> a_future )
+    {
+        m_future = a_future;
+    }
+
+    /*
+    NAME
+
+        Publish - makes the loaded model visible and tells the listeners
+
+    SYNOPSIS
+
+        void Publish( ChordModel a_model )
+
+            a_model --> the loaded model with what was learned replayed over it
+
+    DESCRIPTION
+
+        freezes the model and sets it, then tells the listeners that were waiting
+     */
+    void Publish( ChordModel a_model )
+    {
+        List<Listener> waiting;
+        a_model.Freeze();
+        synchronized ( m_listeners )
+        {
+            m_model.set( a_model );
+            waiting = new ArrayList<>( m_listeners );
+            m_listeners.clear();
+        }
+        for ( Listener listener : waiting )
+        {
+            listener.OnModelReady( a_model );
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package com.evanbunge.chordier;
+
+import android.content.Context;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/*
+ModelLearner
+    teaches the chord model the progressions saved by the user.
+    every save is appended to a log and retrained into a new snapshot of the
+    overlay of every loaded genre in the background. an overlay only holds
+    what was learned, so a retrain copies kilobytes, not the genre's model.
+    ModelRegistry replays the log into each overlay as it loads so nothing
+    learned is lost, whatever the genre, and no saved file is re-read.
+    saving over a file replaces what was learned from it.
+    the learner is owned by ModelRegistry and works on its loader thread, so
+    saves and loads are ordered without a lock and a save never waits on a load.
+ */
+public class ModelLearner
+{
+    // private app directory of the log, kept out of the files that can be loaded
+    private static final String LOG_DIR = "model";
+    // log of learned progressions
+    private static final String LOG_FILE = "learned";
+    // the log is rewritten when it holds this many times more records than files
+    private static final int COMPACT_RATIO = 2;
+
+    private final Context m_context;
+    private final ModelRegistry m_registry;
+    // the loader thread of the registry
+    private final Executor m_executor;
+    // the progression last learned from each file, only used on the loader thread
+    private final Map<String, int[]> m_learned = new HashMap<>();
+
+    /*
+    NAME
+
+        ModelLearner - constructor for ModelLearner class
+
+    SYNOPSIS
+
+        ModelLearner( Context a_context, ModelRegistry a_registry, Executor a_executor )
+
+            a_context --> the application context, used to find the log
+            a_registry --> the registry whose loaded models learn
+            a_executor --> the loader thread of the registry
+     */
+    ModelLearner( Context a_context, ModelRegistry a_registry, Executor a_executor )
+    {
+        m_context = a_context;
+        m_registry = a_registry;
+        m_executor = a_executor;
+    }
+
+    /*
+    NAME
+
+        Learn - teaches the model a saved progression
+
+    SYNOPSIS
+
+        void Learn( String a_filename, int[] a_chords )
+
+            a_filename --> the file the progression was saved to
+            a_chords --> chord numbers of the progression, 0 for no chord, not changed after
+
+    DESCRIPTION
+
+        returns at once, the rest is done on the loader thread in the order of the saves.
+        appends a record of the filename and chord numbers to the log.
+        every loaded overlay gets a copy with the progression added published
+            by the loader thread.
+        models still loading replay the record when they load, the loader thread
+            runs one load or save at a time so a record is never applied twice or missed.
+     */
+    public void Learn( final String a_filename, final int[] a_chords )
+    {
+        m_executor.execute( new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Append( a_filename, a_chords );
+            }
+        } );
+    }
+
+    /*
+    NAME
+
+        Append - logs a saved progression and retrains the loaded models with it
+
+    SYNOPSIS
+
+        void Append( String a_filename, int[] a_chords )
+
+            a_filename --> the file the progression was saved to
+            a_chords --> chord numbers of the progression
+
+    DESCRIPTION
+
+        runs on the loader thread for Learn
+     */
+    private void Append( String a_filename, final int[] a_chords )
+    {
+        try
+        {
+            File log = new File( GetLogDir(), LOG_FILE );
+            DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( log, true ) ) );
+            WriteRecord( out, a_filename, a_chords );
+            out.close();
+        }
+        catch ( Exception e )
+        {
+            e.printStackTrace();
+        }
+
+        final int[] previous = m_learned.put( a_filename, a_chords );
+        List<ModelHandle> loaded = m_registry.GetLoaded();
+        for ( ModelHandle handle : loaded )
+        {
+            handle.Retrain( new ModelHandle.Retrainer()
+            {
+                @Override
+                public void Retrain( ChordModel a_model )
+                {
+                    Apply( a_model, previous, a_chords );
+                }
+            } );
+        }
+    }
+
+    /*
+    NAME
+
+        Replay - applies the log to a freshly loaded model
+
+    SYNOPSIS
+
+        void Replay( ChordModel a_model )
+
+            a_model --> the overlay of the model, not yet published
+
+    DESCRIPTION
+
+        reads the log in one read and applies each record in order.
+        a record cut short by a crash and any records replaced by later saves
+            are dropped by rewriting the log.
+        must run on the loader thread, which publishes the model before it runs anything else.
+     */
+    void Replay( ChordModel a_model )
+    {
+        // every model replays the whole log, the progressions it learned are tracked anew
+        m_learned.clear();
+        File log = new File( GetLogDir(), LOG_FILE );
+        if ( ! log.exists() )
+        {
+            return;
+        }
+        try
+        {
+            byte[] data = new byte[ (int) log.length() ];
+            DataInputStream file = new DataInputStream( new FileInputStream( log ) );
+            file.readFully( data );
+            file.close();
+
+            DataInputStream in = new DataInputStream( new ByteArrayInputStream( data ) );
+            int records = 0;
+            boolean complete = true;
+            try
+            {
+                while ( in.available() > 0 )
+                {
+                    String filename = in.readUTF();
+                    int[] chords = new int[ in.readUnsignedShort() ];
+                    for ( int i = 0; i < chords.length; i++ )
+                    {
+                        chords[ i ] = in.readByte();
+                    }
+                    Apply( a_model, m_learned.put( filename, chords ), chords );
+                    records++;
+                }
+            }
+            catch ( EOFException e )
+            {
+                complete = false;
+            }
+
+            if ( ! complete || records > m_learned.size() * COMPACT_RATIO )
+            {
+                Compact( log );
+            }
+        }
+        catch ( IOException e )
+        {
+            e.printStackTrace();
+        }
+    }
+
+    /*
+    NAME
+
+        Apply - adds one saved progression to a model
+
+    SYNOPSIS
+
+        void Apply( ChordModel a_model, int[] a_previous, int[] a_chords )
+
+            a_model --> the model to change, not yet published
+            a_previous --> the progression learned from the same file before, or null
+            a_chords --> chord numbers of the progression
+
+    DESCRIPTION
+
+        removes the previous progression, if any, then adds the new one.
+            both cost one update per chord of context.
+     */
+    private static void Apply( ChordModel a_model, int[] a_previous, int[] a_chords )
+    {
+        if ( a_previous != null )
+        {
+            a_model.RemoveProgression( a_previous );
+        }
+        a_model.AddProgression( a_chords );
+    }
+
+    /*
+    NAME
+
+        Compact - rewrites the log with one record per file
+
+    SYNOPSIS
+
+        void Compact( File a_log )
+
+            a_log --> the log file
+
+    DESCRIPTION
+
+        writes the progression currently learned from each file to a new log
+            and renames it over the old one
+     */
+    private void Compact( File a_log ) throws IOException
+    {
+        File compacted = new File( a_log.getPath() + ".tmp" );
+        DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( compacted ) ) );
+        for ( Map.Entry<String, int[]> entry : m_learned.entrySet() )
+        {
+            WriteRecord( out, entry.getKey(), entry.getValue() );
+        }
+        out.close();
+        if ( ! compacted.renameTo( a_log ) )
+        {
+            throw new IOException( "could not replace " + a_log );
+        }
+    }
+
+    /*
+    NAME
+
+        WriteRecord - writes one record of the log
+
+    SYNOPSIS
+
+        void WriteRecord( DataOutputStream a_out, String a_filename, int[] a_chords )
+
+            a_out --> the stream to write to
+            a_filename --> the file the progression was saved to
+            a_chords --> chord numbers of the progression
+
+    DESCRIPTION
+
+        writes the filename, the number of chords as a short and a byte per chord
+     */
+    private static void WriteRecord( DataOutputStream a_out, String a_filename, int[] a_chords ) throws IOException
+    {
+        a_out.writeUTF( a_filename );
+        a_out.writeShort( a_chords.length );
+        for ( int chord : a_chords )
+        {
+            a_out.writeByte( chord );
+        }
+    }
+
+    /*
+    NAME
+
+        GetLogDir - gets the directory of the log
+
+    SYNOPSIS
+
+        File GetLogDir()
+
+    RETURNS
+
+        the private model directory, created if needed
+     */
+    private File GetLogDir()
+    {
+        return m_context.getDir( LOG_DIR, Context.MODE_PRIVATE );
+    }
+}
@@ -0,0 +1,418 @@
+package com.evanbunge.chordier;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/*
+ModelRegistry
+    finds the chord model of every genre and loads them when first asked for.
+    the default genre is compiled from DefaultProgIndex, the others are
+    compiled model files under assets/models named after their genre.
+
+    models are loaded on one background thread so no activity waits on them.
+    each loaded model is frozen and published under an overlay, and what
+    ModelLearner has learned is replayed into the overlay, so learning never
+    copies or changes the model of a genre.
+    loaded models are kept in least recently used order, and the oldest are
+    dropped once they use more memory than the cache allows. a dropped model
+    is loaded again the next time it is asked for.
+
+    one registry is kept by ChordierApp for the life of the app.
+ */
+public class ModelRegistry
+{
+    // genre of the model compiled from the bundled corpus
+    public static final String DEFAULT_GENRE = "Default";
+    // memory the loaded models may use unless configured otherwise
+    public static final long DEFAULT_CACHE_BYTES = 4L * 1024 * 1024;
+    // compiled model of the default genre, built from DefaultProgIndex by ModelCompiler
+    private static final String DEFAULT_MODEL_ASSET = "DefaultModel";
+    // corpus of the default genre, only parsed if its compiled model cannot be read
+    private static final String CORPUS_ASSET = "DefaultProgIndex";
+    // asset directory of the compiled models of the other genres
+    private static final String GENRE_DIR = "models";
+    // bytes read from an asset at a time
+    private static final int READ_BLOCK = 8192;
+
+    private final AssetManager m_assets;
+    private final ModelLearner m_learner;
+    private final long m_cacheBytes;
+    // the thread that loads and retrains models
+    private final ExecutorService m_executor;
+    // handles of the loaded and loading models, least recently used first
+    private final LinkedHashMap<String, ModelHandle> m_cache = new LinkedHashMap<>( 16, 0.75f, true );
+    // the genre chosen by the user
+    private String m_genre = DEFAULT_GENRE;
+
+    /*
+    NAME
+
+        ModelRegistry - constructor for ModelRegistry class
+
+    SYNOPSIS
+
+        ModelRegistry( Context a_context, long a_cacheBytes )
+
+            a_context --> any context, only its application context is kept
+            a_cacheBytes --> the memory the loaded models may use
+
+    DESCRIPTION
+
+        starts the loader thread, a daemon so it never keeps the app alive
+     */
+    public ModelRegistry( Context a_context, long a_cacheBytes )
+    {
+        Context context = a_context.getApplicationContext();
+        m_assets = context.getAssets();
+        m_cacheBytes = a_cacheBytes;
+        m_executor = Executors.newSingleThreadExecutor( new ThreadFactory()
+        {
+            @Override
+            public Thread newThread( Runnable a_runnable )
+            {
+                Thread thread = new Thread( a_runnable, "ModelLoader" );
+                thread.setDaemon( true );
+                return thread;
+            }
+        } );
+        m_learner = new ModelLearner( context, this, m_executor );
+    }
+
+    /*
+    NAME
+
+        GetLearner - gets the learner that teaches every model the saved progressions
+
+    SYNOPSIS
+
+        ModelLearner GetLearner()
+
+    RETURNS
+
+        the learner
+     */
+    public ModelLearner GetLearner()
+    {
+        return m_learner;
+    }
+
+    /*
+    NAME
+
+        GetGenres - lists the genres that have a model
+
+    SYNOPSIS
+
+        List<String> GetGenres()
+
+    RETURNS
+
+        the default genre followed by the genres under assets/models in name order
+     */
+    public List<String> GetGenres()
+    {
+        List<String> genres = new ArrayList<>();
+        genres.add( DEFAULT_GENRE );
+        try
+        {
+            String[] files = m_assets.list( GENRE_DIR );
+            Arrays.sort( files );
+            genres.addAll( Arrays.asList( files ) );
+        }
+        catch ( Exception e )
+        {
+            e.printStackTrace();
+        }
+        return genres;
+    }
+
+    /*
+    NAME
+
+        GetCurrent - gets the model of the genre chosen by the user
+
+    SYNOPSIS
+
+        ModelHandle GetCurrent()
+
+    RETURNS
+
+        the handle of the current genre, loading if it was not loaded
+     */
+    public synchronized ModelHandle GetCurrent()
+    {
+        return Get( m_genre );
+    }
+
+    /*
+    NAME
+
+        SetCurrent - chooses the genre to suggest chords from
+
+    SYNOPSIS
+
+        ModelHandle SetCurrent( String a_genre )
+
+            a_genre --> one of the genres from GetGenres
+
+    RETURNS
+
+        the handle of the genre, loading if it was not loaded
+     */
+    public synchronized ModelHandle SetCurrent( String a_genre )
+    {
+        m_genre = a_genre;
+        return Get( a_genre );
+    }
+
+    /*
+    NAME
+
+        GetCurrentGenre - gets the genre chosen by the user
+
+    SYNOPSIS
+
+        String GetCurrentGenre()
+
+    RETURNS
+
+        the genre name
+     */
+    public synchronized String GetCurrentGenre()
+    {
+        return m_genre;
+    }
+
+    /*
+    NAME
+
+        Get - gets the model of a genre
+
+    SYNOPSIS
+
+        ModelHandle Get( String a_genre )
+
+            a_genre --> one of the genres from GetGenres
+
+    DESCRIPTION
+
+        returns the cached handle and marks it most recently used,
+            or makes a new handle and submits its load to the loader thread
+
+    RETURNS
+
+        the handle, its model may still be loading
+     */
+    public synchronized ModelHandle Get( String a_genre )
+    {
+        ModelHandle handle = m_cache.get( a_genre );
+        if ( handle == null )
+        {
+            handle = new ModelHandle( a_genre, m_executor );
+            m_cache.put( a_genre, handle );
+            final ModelHandle loading = handle;
+            handle.SetFuture( m_executor.submit( new Callable<ChordModel>()
+            {
+                @Override
+                public ChordModel call()
+                {
+                    ChordModel base = LoadModel( loading.GetGenre() );
+                    base.Freeze();
+                    ChordModel model = ChordModel.Overlay( base );
+                    // saves are learned on this thread too, so none lands between the replay and the publish
+                    m_learner.Replay( model );
+                    loading.Publish( model );
+                    Evict();
+                    return model;
+                }
+            } ) );
+        }
+        return handle;
+    }
+
+    /*
+    NAME
+
+        GetLoaded - gets the handles of every loaded model
+
+    SYNOPSIS
+
+        List<ModelHandle> GetLoaded()
+
+    RETURNS
+
+        the cached handles whose models have been published
+     */
+    synchronized List<ModelHandle> GetLoaded()
+    {
+        List<ModelHandle> loaded = new ArrayList<>();
+        for ( ModelHandle handle : m_cache.values() )
+        {
+            if ( handle.IsReady() )
+            {
+                loaded.add( handle );
+            }
+        }
+        return loaded;
+    }
+
+    /*
+    NAME
+
+        Evict - drops the least recently used models over the memory allowed
+
+    SYNOPSIS
+
+        void Evict()
+
+    DESCRIPTION
+
+        adds up the memory of the loaded models, then drops loaded models from the
+            least recently used end until they fit.
+        the current genre and models still loading are never dropped.
+        whoever still holds a dropped handle can keep using its model.
+     */
+    private synchronized void Evict()
+    {
+        long total = 0;
+        for ( ModelHandle handle : m_cache.values() )
+        {
+            if ( handle.IsReady() )
+            {
+                total += GetMemorySize( handle.GetModel() );
+            }
+        }
+        Iterator<Map.Entry<String, ModelHandle>> entries = m_cache.entrySet().iterator();
+        while ( total > m_cacheBytes && entries.hasNext() )
+        {
+            ModelHandle handle = entries.next().getValue();
+            if ( handle.IsReady() && ! handle.GetGenre().equals( m_genre ) )
+            {
+                total -= GetMemorySize( handle.GetModel() );
+                entries.remove();
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        GetMemorySize - estimates the memory used by a published model
+
+    SYNOPSIS
+
+        long GetMemorySize( ChordModel a_model )
+
+            a_model --> the overlay published by a handle
+
+    RETURNS
+
+        the number of bytes in the overlay and its base
+     */
+    private static long GetMemorySize( ChordModel a_model )
+    {
+        return a_model.GetMemorySize() + a_model.GetBase().GetMemorySize();
+    }
+
+    /*
+    NAME
+
+        ReadAll - reads a stream to its end
+
+    SYNOPSIS
+
+        byte[] ReadAll( InputStream a_in )
+
+            a_in --> the stream to read, left open
+
+    DESCRIPTION
+
+        available() is only what can be read without blocking, a compressed asset
+            can report less than its size, so the stream is read in blocks until it ends
+
+    RETURNS
+
+        every byte of the stream
+     */
+    private static byte[] ReadAll( InputStream a_in ) throws IOException
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream( Math.max( a_in.available(), READ_BLOCK ) );
+        byte[] block = new byte[ READ_BLOCK ];
+        int read;
+        while ( ( read = a_in.read( block ) ) != - 1 )
+        {
+            out.write( block, 0, read );
+        }
+        return out.toByteArray();
+    }
+
+    /*
+    NAME
+
+        LoadModel - loads the model of a genre from the assets
+
+    SYNOPSIS
+
+        ChordModel LoadModel( String a_genre )
+
+            a_genre --> the genre to load
+
+    DESCRIPTION
+
+        Reads the compiled model asset to the end in bulk and wraps it without parsing.
+        If the compiled model of the default genre is missing or from another version,
+            trains a model from the corpus asset instead, smoothed and quantized like ModelCompiler does.
+
+    RETURNS
+
+        the loaded model, empty if no asset could be read
+     */
+    private ChordModel LoadModel( String a_genre )
+    {
+        boolean isDefault = a_genre.equals( DEFAULT_GENRE );
+        try
+        {
+            InputStream in = m_assets.open( isDefault ? DEFAULT_MODEL_ASSET : GENRE_DIR + "/" + a_genre );
+            byte[] data = ReadAll( in );
+            in.close();
+            return ChordModel.Read( ByteBuffer.wrap( data ) );
+        }
+        catch ( Exception e )
+        {
+            e.printStackTrace();
+        }
+        if ( isDefault )
+        {
+            try
+            {
+                ChordModel model = ChordModel.Train( new InputStreamReader( m_assets.open( CORPUS_ASSET ) ) );
+                model.Smooth( ChordModel.DEFAULT_SMOOTHING, ChordModel.DEFAULT_ADD_K );
+                model.Quantize( ChordModel.DEFAULT_BITS );
+                return model;
+            }
+            catch ( Exception e )
+            {
+                e.printStackTrace();
+            }
+        }
+        ChordModel empty = new ChordModel();
+        empty.Rank();
+        return empty;
+    }
+}
@@ -0,0 +1,236 @@
+package com.evanbunge.chordier;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/*
+ModelTrainer
+    build time trainer for corpora too large to read on one thread.
+    the corpus file is split into shards of whole lines, each shard is
+    streamed from disk and counted into its own model on a fork/join pool,
+    and the shard models are merged pairwise in shard order.
+    the shards only depend on the file and the shard size, never on the
+    number of threads, so every machine compiles the same model file.
+ */
+public class ModelTrainer
+{
+    // bytes of corpus per shard unless configured otherwise
+    public static final long DEFAULT_SHARD_SIZE = 8L * 1024 * 1024;
+    // bytes read from the file at a time
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final int m_endOrder;
+    private final int m_midOrder;
+    private final long m_shardSize;
+
+    /*
+    NAME
+
+        ModelTrainer - constructor for ModelTrainer class
+
+    SYNOPSIS
+
+        ModelTrainer( int a_endOrder, int a_midOrder, long a_shardSize )
+
+            a_endOrder --> the order of the end table of the trained model
+            a_midOrder --> the order of the mid table of the trained model
+            a_shardSize --> the number of corpus bytes counted by one task
+
+    DESCRIPTION
+
+        initializes the member variables
+     */
+    public ModelTrainer( int a_endOrder, int a_midOrder, long a_shardSize )
+    {
+        m_endOrder = a_endOrder;
+        m_midOrder = a_midOrder;
+        m_shardSize = Math.max( 1, a_shardSize );
+    }
+
+    /*
+    NAME
+
+        Train - trains a model on a corpus file
+
+    SYNOPSIS
+
+        ChordModel Train( File a_corpus, int a_threads )
+
+            a_corpus --> the corpus, one progression per line
+            a_threads --> the number of worker threads
+
+    DESCRIPTION
+
+        counts every shard on a pool of the given size, merges the shards and ranks the model
+
+    RETURNS
+
+        the trained model
+     */
+    public ChordModel Train( File a_corpus, int a_threads ) throws IOException
+    {
+        RandomAccessFile file = new RandomAccessFile( a_corpus, "r" );
+        ForkJoinPool pool = new ForkJoinPool( Math.max( 1, a_threads ) );
+        try
+        {
+            FileChannel channel = file.getChannel();
+            int shards = (int) Math.max( 1, ( channel.size() + m_shardSize - 1 ) / m_shardSize );
+            ChordModel model = pool.invoke( new ShardTask( channel, 0, shards ) );
+            model.Rank();
+            return model;
+        }
+        catch ( RuntimeException e )
+        {
+            if ( e.getCause() instanceof IOException )
+            {
+                throw (IOException) e.getCause();
+            }
+            throw e;
+        }
+        finally
+        {
+            pool.shutdown();
+            file.close();
+        }
+    }
+
+    /*
+    NAME
+
+        CountShard - counts the lines that start inside a shard
+
+    SYNOPSIS
+
+        ChordModel CountShard( FileChannel a_channel, long a_start, long a_end )
+
+            a_channel --> the corpus
+            a_start --> the first byte of the shard
+            a_end --> the byte after the shard
+
+    DESCRIPTION
+
+        reads the shard in chunks with positional reads, so shards share the channel.
+        a line belongs to the shard its first byte is in, so a shard skips the
+            partial line it starts in and finishes the line it ends in.
+        digits go straight into one reused chord buffer, no strings are made.
+
+    RETURNS
+
+        an unranked model of the shard
+     */
+    private ChordModel CountShard( FileChannel a_channel, long a_start, long a_end ) throws IOException
+    {
+        ChordModel model = new ChordModel( m_endOrder, m_midOrder );
+        ByteBuffer buffer = ByteBuffer.allocate( CHUNK_SIZE );
+        int[] chords = new int[ 64 ];
+        int length = 0;
+
+        // start one byte early to tell if the shard starts on a line boundary
+        long position = a_start == 0 ? 0 : a_start - 1;
+        boolean skipping = a_start > 0;
+        boolean lineStart = a_start == 0;
+
+        reading:
+        while ( true )
+        {
+            buffer.clear();
+            int read = a_channel.read( buffer, position );
+            if ( read <= 0 )
+            {
+                break;
+            }
+            for ( int i = 0; i < read; i++, position++ )
+            {
+                byte b = buffer.get( i );
+                if ( skipping )
+                {
+                    skipping = b != '\n';
+                    lineStart = ! skipping;
+                    continue;
+                }
+                if ( lineStart )
+                {
+                    if ( position >= a_end )
+                    {
+                        break reading;
+                    }
+                    lineStart = false;
+                }
+                if ( b == '\n' )
+                {
+                    model.AddProgression( chords, length );
+                    length = 0;
+                    lineStart = true;
+                }
+                else if ( b >= '0' && b <= '9' )
+                {
+                    if ( length == chords.length )
+                    {
+                        int[] larger = new int[ length * 2 ];
+                        System.arraycopy( chords, 0, larger, 0, length );
+                        chords = larger;
+                    }
+                    chords[ length++ ] = b - '0';
+                }
+            }
+        }
+        // last line without a newline
+        if ( length > 0 )
+        {
+            model.AddProgression( chords, length );
+        }
+        return model;
+    }
+
+    /*
+    ShardTask
+        counts a range of shards, splitting it in half until one shard is left.
+        the left half absorbs the right so the merge order is fixed.
+     */
+    private class ShardTask extends RecursiveTask<ChordModel>
+    {
+        // RecursiveTask is serializable, a task is never serialized
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel m_channel;
+        private final int m_first;
+        private final int m_count;
+
+        ShardTask( FileChannel a_channel, int a_first, int a_count )
+        {
+            m_channel = a_channel;
+            m_first = a_first;
+            m_count = a_count;
+        }
+
+        @Override
+        protected ChordModel compute()
+        {
+            if ( m_count == 1 )
+            {
+                try
+                {
+                    long start = m_first * m_shardSize;
+                    return CountShard( m_channel, start, start + m_shardSize );
+                }
+                catch ( IOException e )
+                {
+                    throw new RuntimeException( e );
+                }
+            }
+            int half = m_count / 2;
+            ShardTask left = new ShardTask( m_channel, m_first, half );
+            ShardTask right = new ShardTask( m_channel, m_first + half, m_count - half );
+            left.fork();
+            ChordModel rightModel = right.compute();
+            ChordModel leftModel = left.join();
+            leftModel.Merge( rightModel );
+            return leftModel;
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.evanbunge.chordier;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.util.Arrays;
+
+/*
+ModelVerifier
+    build time tool that checks a quantized model answers like the model
+    it was quantized from. every end and mid context of chord numbers 0 to 7,
+    as long as the order each table was trained with, is queried in both: the suggestions must be the same and the chords of
+    each distribution must come in the same order, so every top k is the same.
+    the largest change in a probability is reported as well.
+
+    usage: java com.evanbunge.chordier.ModelVerifier <model> <quantized model>
+        e.g. ModelVerifier /tmp/FullModel assets/DefaultModel
+        exits with 1 if any context differs
+ */
+public class ModelVerifier
+{
+    // chord numbers a context can hold, 0 for no chord
+    private static final int NUM_VALUES = CountTable.NUM_CHORDS + 1;
+
+    /*
+    NAME
+
+        Verify - compares every context of two models
+
+    SYNOPSIS
+
+        int Verify( ChordModel a_model, ChordModel a_quantized, PrintStream a_report )
+
+            a_model --> the model before quantizing
+            a_quantized --> the model after quantizing
+            a_report --> receives the contexts that differ and a summary
+
+    RETURNS
+
+        the number of contexts whose suggestions or order differ
+     */
+    public static int Verify( ChordModel a_model, ChordModel a_quantized, PrintStream a_report )
+    {
+        int[] suggestions = new int[ CountTable.NUM_CHORDS ];
+        int[] quantizedSuggestions = new int[ CountTable.NUM_CHORDS ];
+        float[] distribution = new float[ CountTable.NUM_CHORDS ];
+        float[] quantizedDistribution = new float[ CountTable.NUM_CHORDS ];
+        int[] order = new int[ CountTable.NUM_CHORDS ];
+        int[] quantizedOrder = new int[ CountTable.NUM_CHORDS ];
+        int contexts = 0;
+        int mismatches = 0;
+        double maxError = 0;
+        if ( a_model.GetEndOrder() != a_quantized.GetEndOrder() || a_model.GetMidOrder() != a_quantized.GetMidOrder() )
+        {
+            throw new IllegalArgumentException( "the models were trained with different orders" );
+        }
+        // the target sits in the middle so the longest context fits on both sides of it
+        int target = NGramTable.MAX_ORDER;
+        int[] chords = new int[ 2 * target + 1 ];
+
+        for ( int table = 0; table < 2; table++ )
+        {
+            int tableOrder = table == 0 ? a_model.GetEndOrder() : a_model.GetMidOrder();
+            int numContexts = 1;
+            for ( int i = 0; i < tableOrder; i++ )
+            {
+                numContexts *= NUM_VALUES;
+            }
+            for ( int context = 0; context < numContexts; context++ )
+            {
+                // chord i of the context goes where the table looks for it
+                for ( int i = 0, rest = context; i < tableOrder; i++, rest /= NUM_VALUES )
+                {
+                    int distance = table == 0 ? i + 1 : i / 2 + 1;
+                    chords[ table == 1 && i % 2 == 1 ? target + distance : target - distance ] = rest % NUM_VALUES;
+                }
+                int count;
+                int quantizedCount;
+                if ( table == 0 )
+                {
+                    count = a_model.GetEndSuggestions( chords, 0, target, suggestions );
+                    quantizedCount = a_quantized.GetEndSuggestions( chords, 0, target, quantizedSuggestions );
+                    a_model.GetEndDistribution( chords, 0, target, distribution );
+                    a_quantized.GetEndDistribution( chords, 0, target, quantizedDistribution );
+                }
+                else
+                {
+                    count = a_model.GetMidSuggestions( chords, chords.length, target, suggestions );
+                    quantizedCount = a_quantized.GetMidSuggestions( chords, chords.length, target, quantizedSuggestions );
+                    a_model.GetMidDistribution( chords, chords.length, target, distribution );
+                    a_quantized.GetMidDistribution( chords, chords.length, target, quantizedDistribution );
+                }
+                contexts++;
+                for ( int i = 0; i < CountTable.NUM_CHORDS; i++ )
+                {
+                    maxError = Math.max( maxError, Math.abs( distribution[ i ] - quantizedDistribution[ i ] ) );
+                }
+                ChordModel.SelectTop( distribution, order, CountTable.NUM_CHORDS );
+                ChordModel.SelectTop( quantizedDistribution, quantizedOrder, CountTable.NUM_CHORDS );
+
+                boolean same = count == quantizedCount;
+                for ( int i = 0; same && i < count; i++ )
+                {
+                    same = suggestions[ i ] == quantizedSuggestions[ i ];
+                }
+                for ( int i = 0; same && i < CountTable.NUM_CHORDS; i++ )
+                {
+                    same = order[ i ] == quantizedOrder[ i ];
+                }
+                if ( ! same )
+                {
+                    mismatches++;
+                    String name = table == 0 ? "end " : "mid ";
+                    for ( int i = 0, rest = context; i < tableOrder; i++, rest /= NUM_VALUES )
+                    {
+                        name += rest % NUM_VALUES;
+                    }
+                    a_report.println( name + " differs" );
+                }
+            }
+            Arrays.fill( chords, 0 );
+        }
+        a_report.println( contexts + " contexts, " + mismatches + " differ, largest probability change " + maxError );
+        a_report.println( "memory " + a_model.GetMemorySize() + " bytes, quantized " + a_quantized.GetMemorySize() + " bytes" );
+        return mismatches;
+    }
+
+    /*
+    NAME
+
+        main - compares a model file with its quantized model file
+
+    SYNOPSIS
+
+        void main( String[] a_args )
+
+            a_args --> the model file and the quantized model file
+     */
+    public static void main( String[] a_args ) throws Exception
+    {
+        if ( a_args.length != 2 )
+        {
+            System.err.println( "usage: ModelVerifier <model> <quantized model>" );
+            System.exit( 1 );
+        }
+        int mismatches = Verify( ChordModel.Read( new File( a_args[ 0 ] ) ),
+                                 ChordModel.Read( new File( a_args[ 1 ] ) ), System.out );
+        System.exit( mismatches == 0 ? 0 : 1 );
+    }
+}
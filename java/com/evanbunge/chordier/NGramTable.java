@@ -0,0 +1,595 @@
+package com.evanbunge.chordier;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/*
+NGramTable
+    counts which chord follows a context of up to a configurable number of chords
+    and backs off to shorter contexts when a context was rarely or never seen.
+
+    a context is passed as packed chord numbers, 3 bits per chord, with the
+    chord nearest to the target in the lowest bits. chord number 0 means no chord.
+    backing off drops the chord furthest from the target, so every context of
+    length n is stored with its n shorter prefixes and points to the next shorter one.
+ */
+public class NGramTable
+{
+    // longest context that fits in a packed key
+    public static final int MAX_ORDER = 9;
+    // bits used by each chord number in a packed context
+    public static final int BITS_PER_CHORD = 3;
+    // the context length is stored above the chord numbers in a key
+    private static final int LENGTH_SHIFT = MAX_ORDER * BITS_PER_CHORD;
+    // contexts whose longest observed prefix is remembered, as a power of two
+    private static final int RESOLVED_BITS = 8;
+
+    // number of chords in the longest context
+    private final int m_order;
+    private final CountTable m_counts;
+    // slot of the longest observed prefix of recently missed contexts, -1 if none yet
+    private final int[] m_resolved;
+
+    /*
+    NAME
+
+        NGramTable - constructor for NGramTable class
+
+    SYNOPSIS
+
+        NGramTable( int a_order )
+
+            a_order --> the number of chords in the longest context, 0 to 9
+
+    DESCRIPTION
+
+        creates an empty table
+     */
+    public NGramTable( int a_order )
+    {
+        this( a_order, new CountTable() );
+    }
+
+    /*
+    NAME
+
+        NGramTable - constructor for NGramTable class from existing counts
+
+    SYNOPSIS
+
+        NGramTable( int a_order, CountTable a_counts )
+
+            a_order --> the number of chords in the longest context, 0 to 9
+            a_counts --> the counts of every context and its prefixes
+     */
+    private NGramTable( int a_order, CountTable a_counts )
+    {
+        if ( a_order < 0 || a_order > MAX_ORDER )
+        {
+            throw new IllegalArgumentException( "order must be between 0 and " + MAX_ORDER + ": " + a_order );
+        }
+        m_order = a_order;
+        m_counts = a_counts;
+        m_resolved = new int[ 1 << RESOLVED_BITS ];
+        Arrays.fill( m_resolved, - 1 );
+    }
+
+    /*
+    NAME
+
+        GetOrder - gets the number of chords in the longest context
+
+    SYNOPSIS
+
+        int GetOrder()
+
+    RETURNS
+
+        the order of the table
+     */
+    public int GetOrder()
+    {
+        return m_order;
+    }
+
+    /*
+    NAME
+
+        Add - counts a target chord in a context
+
+    SYNOPSIS
+
+        void Add( int a_context, int a_target )
+
+            a_context --> the packed context, at least order chords long
+            a_target --> the chord index of the target, 0 to 6
+
+    DESCRIPTION
+
+        increments the target in the context and in each of its shorter prefixes,
+            shortest first so every new context can find the one it backs off to
+     */
+    public void Add( int a_context, int a_target )
+    {
+        int backoff = - 1;
+        for ( int length = 0; length <= m_order; length++ )
+        {
+            int key = Key( a_context, length );
+            m_counts.Increment( key, a_target, backoff );
+            backoff = key;
+        }
+    }
+
+    /*
+    NAME
+
+        Remove - undoes an Add
+
+    SYNOPSIS
+
+        void Remove( int a_context, int a_target )
+
+            a_context --> the packed context, at least order chords long
+            a_target --> the chord index of the target, 0 to 6
+
+    DESCRIPTION
+
+        decrements the target in the context and in each of its shorter prefixes
+     */
+    public void Remove( int a_context, int a_target )
+    {
+        for ( int length = 0; length <= m_order; length++ )
+        {
+            m_counts.Decrement( Key( a_context, length ), a_target );
+        }
+    }
+
+    /*
+    NAME
+
+        Merge - adds the counts of another table to this one
+
+    SYNOPSIS
+
+        void Merge( NGramTable a_other )
+
+            a_other --> a table of the same order
+     */
+    public void Merge( NGramTable a_other )
+    {
+        if ( a_other.m_order != m_order )
+        {
+            throw new IllegalArgumentException( "cannot merge order " + a_other.m_order + " into order " + m_order );
+        }
+        m_counts.Merge( a_other.m_counts );
+    }
+
+    /*
+    NAME
+
+        Copy - copies the table
+
+    SYNOPSIS
+
+        NGramTable Copy()
+
+    RETURNS
+
+        a table of the same order with its own copy of the counts
+     */
+    public NGramTable Copy()
+    {
+        return new NGramTable( m_order, m_counts.Copy() );
+    }
+
+    /*
+    NAME
+
+        Rank - ranks the suggestions of every context
+
+    SYNOPSIS
+
+        void Rank()
+
+    DESCRIPTION
+
+        called once the counts are final
+     */
+    public void Rank()
+    {
+        m_counts.Rank();
+    }
+
+    /*
+    NAME
+
+        Smooth - smooths the counts of every context and ranks the table
+
+    SYNOPSIS
+
+        void Smooth( int a_method, float a_k )
+
+            a_method --> one of the CountTable.SMOOTH_ constants
+            a_k --> the amount added to every count by add-k
+
+    DESCRIPTION
+
+        every context backs off to the one without its furthest chord,
+            so each context is mixed with its shorter contexts, see CountTable
+     */
+    public void Smooth( int a_method, float a_k )
+    {
+        m_counts.Smooth( a_method, a_k );
+    }
+
+    /*
+    NAME
+
+        Quantize - replaces the counts with log probabilities of a few bits
+
+    SYNOPSIS
+
+        void Quantize( int a_bits )
+
+            a_bits --> 8 or 16, the size of each code
+
+    DESCRIPTION
+
+        the table must have been ranked, see CountTable
+     */
+    public void Quantize( int a_bits )
+    {
+        m_counts.Quantize( a_bits );
+    }
+
+    /*
+    NAME
+
+        GetBits - gets the size of the codes of a quantized table
+
+    SYNOPSIS
+
+        int GetBits()
+
+    RETURNS
+
+        8 or 16 if the table is quantized, otherwise 0
+     */
+    public int GetBits()
+    {
+        return m_counts.GetBits();
+    }
+
+    /*
+    NAME
+
+        Find - finds the longest observed context
+
+    SYNOPSIS
+
+        int Find( int a_context, int a_length )
+
+            a_context --> the packed context
+            a_length --> the number of chords known in the context
+
+    DESCRIPTION
+
+        tries the context cut to the order of the table. when it was never observed,
+            the slot its shorter prefixes resolved to last time is checked: it must
+            hold a prefix of the context whose next longer prefix is still missing.
+            only when that fails are ever shorter prefixes tried, and the slot found
+            is remembered. so an observed context takes one probe, a missed one two
+            once it was resolved, and order + 1 the first time.
+
+        contexts are only ever added, so a remembered slot is checked rather than
+            cleared. threads racing on it at worst try the prefixes again.
+
+    RETURNS
+
+        the slot of the longest observed prefix, or -1 if the table is empty
+     */
+    public int Find( int a_context, int a_length )
+    {
+        int length = Math.min( a_length, m_order );
+        int key = Key( a_context, length );
+        int slot = m_counts.Find( key );
+        if ( slot >= 0 )
+        {
+            return slot;
+        }
+
+        int resolved = ( key * 0x9E3779B9 ) >>> ( 32 - RESOLVED_BITS );
+        slot = m_resolved[ resolved ];
+        int found = m_counts.GetKey( slot );
+        int foundLength = found >>> LENGTH_SHIFT;
+        if ( found != - 1 && foundLength < length && found == Key( a_context, foundLength )
+             && m_counts.Find( Key( a_context, foundLength + 1 ) ) < 0 )
+        {
+            return slot;
+        }
+        for ( length--; length >= 0; length-- )
+        {
+            slot = m_counts.Find( Key( a_context, length ) );
+            if ( slot >= 0 )
+            {
+                m_resolved[ resolved ] = slot;
+                return slot;
+            }
+        }
+        return - 1;
+    }
+
+    /*
+    NAME
+
+        GetSuggestions - gets the ranked suggestions of a context
+
+    SYNOPSIS
+
+        int GetSuggestions( int a_context, int a_length, int[] a_out )
+
+            a_context --> the packed context
+            a_length --> the number of chords known in the context
+            a_out --> receives the suggested chords as chord indices, must hold seven
+
+    DESCRIPTION
+
+        finds the longest observed prefix of the context and copies its ranking,
+            filled in from its backoff contexts if it has few observations
+
+    RETURNS
+
+        the number of suggested chords written to a_out
+     */
+    public int GetSuggestions( int a_context, int a_length, int[] a_out )
+    {
+        return GetSuggestions( a_context, a_length, a_out, 0 );
+    }
+
+    /*
+    NAME
+
+        GetSuggestions - gets the ranked suggestions of a context into part of a buffer
+
+    SYNOPSIS
+
+        int GetSuggestions( int a_context, int a_length, int[] a_out, int a_offset )
+
+            a_context --> the packed context
+            a_length --> the number of chords known in the context
+            a_out --> receives the suggested chords as chord indices
+            a_offset --> where in a_out to start writing, seven entries must fit after it
+
+    RETURNS
+
+        the number of suggested chords written to a_out
+     */
+    public int GetSuggestions( int a_context, int a_length, int[] a_out, int a_offset )
+    {
+        return m_counts.GetSuggestions( Find( a_context, a_length ), a_out, a_offset );
+    }
+
+    /*
+    NAME
+
+        GetDistribution - gets the probability of every chord after a context
+
+    SYNOPSIS
+
+        void GetDistribution( int a_context, int a_length, float[] a_out )
+
+            a_context --> the packed context
+            a_length --> the number of chords known in the context
+            a_out --> receives the probability of each chord index, must hold seven
+
+    DESCRIPTION
+
+        finds the longest observed prefix of the context and writes its distribution
+     */
+    public void GetDistribution( int a_context, int a_length, float[] a_out )
+    {
+        m_counts.GetDistribution( Find( a_context, a_length ), a_out );
+    }
+
+    /*
+    NAME
+
+        Sample - draws a chord to follow a context
+
+    SYNOPSIS
+
+        int Sample( int a_context, int a_length, Random a_random )
+
+            a_context --> the packed context
+            a_length --> the number of chords known in the context
+            a_random --> the source of random numbers
+
+    RETURNS
+
+        the chord index drawn from the distribution GetDistribution gives
+     */
+    public int Sample( int a_context, int a_length, Random a_random )
+    {
+        return m_counts.Sample( Find( a_context, a_length ), a_random );
+    }
+
+    /*
+    NAME
+
+        GetSuggestions - gets the ranked suggestions of a context with a delta added
+
+    SYNOPSIS
+
+        int GetSuggestions( NGramTable a_delta, int a_context, int a_length, int[] a_out, int a_offset )
+
+            a_delta --> a table of the same order whose counts are added to this one
+            a_context --> the packed context
+            a_length --> the number of chords known in the context
+            a_out --> receives the suggested chords as chord indices
+            a_offset --> where in a_out to start writing, seven entries must fit after it
+
+    DESCRIPTION
+
+        finds the longest observed prefix in both tables and merges them, see CountTable
+
+    RETURNS
+
+        the number of suggested chords written to a_out
+     */
+    public int GetSuggestions( NGramTable a_delta, int a_context, int a_length, int[] a_out, int a_offset )
+    {
+        int slot = Find( a_context, a_length );
+        int deltaSlot = a_delta.Find( a_context, a_length );
+        return m_counts.GetSuggestions( slot, Length( slot ), a_delta.m_counts,
+                                        deltaSlot, a_delta.Length( deltaSlot ), a_out, a_offset );
+    }
+
+    /*
+    NAME
+
+        GetDistribution - gets the probability of every chord after a context with a delta added
+
+    SYNOPSIS
+
+        void GetDistribution( NGramTable a_delta, int a_context, int a_length, float[] a_out )
+
+            a_delta --> a table of the same order whose counts are added to this one
+            a_context --> the packed context
+            a_length --> the number of chords known in the context
+            a_out --> receives the probability of each chord index, must hold seven
+     */
+    public void GetDistribution( NGramTable a_delta, int a_context, int a_length, float[] a_out )
+    {
+        int slot = Find( a_context, a_length );
+        int deltaSlot = a_delta.Find( a_context, a_length );
+        m_counts.GetDistribution( slot, Length( slot ), a_delta.m_counts,
+                                  deltaSlot, a_delta.Length( deltaSlot ), a_out );
+    }
+
+    /*
+    NAME
+
+        Sample - draws a chord to follow a context with a delta added
+
+    SYNOPSIS
+
+        int Sample( NGramTable a_delta, int a_context, int a_length, Random a_random )
+
+            a_delta --> a table of the same order whose counts are added to this one
+            a_context --> the packed context
+            a_length --> the number of chords known in the context
+            a_random --> the source of random numbers
+
+    RETURNS
+
+        the chord index drawn from the distribution GetDistribution gives
+     */
+    public int Sample( NGramTable a_delta, int a_context, int a_length, Random a_random )
+    {
+        int slot = Find( a_context, a_length );
+        int deltaSlot = a_delta.Find( a_context, a_length );
+        return m_counts.Sample( slot, Length( slot ), a_delta.m_counts,
+                                deltaSlot, a_delta.Length( deltaSlot ), a_random );
+    }
+
+    /*
+    NAME
+
+        GetMemorySize - estimates the memory used by the table
+
+    SYNOPSIS
+
+        long GetMemorySize()
+
+    RETURNS
+
+        the number of bytes in the count arrays
+     */
+    public long GetMemorySize()
+    {
+        return m_counts.GetMemorySize();
+    }
+
+    /*
+    NAME
+
+        Read - reads a table written by Write
+
+    SYNOPSIS
+
+        NGramTable Read( ByteBuffer a_buffer )
+
+            a_buffer --> the buffer positioned at the start of the table
+
+    RETURNS
+
+        the table as it was when written
+     */
+    public static NGramTable Read( ByteBuffer a_buffer )
+    {
+        int order = a_buffer.getInt();
+        return new NGramTable( order, CountTable.Read( a_buffer ) );
+    }
+
+    /*
+    NAME
+
+        Write - writes the order and the counts of the table
+
+    SYNOPSIS
+
+        void Write( DataOutputStream a_out )
+
+            a_out --> the stream to write to
+     */
+    public void Write( DataOutputStream a_out ) throws IOException
+    {
+        a_out.writeInt( m_order );
+        m_counts.Write( a_out );
+    }
+
+    /*
+    NAME
+
+        Length - gets the number of chords in the context of a slot
+
+    SYNOPSIS
+
+        int Length( int a_slot )
+
+            a_slot --> the slot returned by Find, or -1
+
+    RETURNS
+
+        the number of chords in the context, or -1 if a_slot is -1
+     */
+    private int Length( int a_slot )
+    {
+        return a_slot < 0 ? - 1 : m_counts.GetKey( a_slot ) >>> LENGTH_SHIFT;
+    }
+
+    /*
+    NAME
+
+        Key - packs a prefix of a context with its length
+
+    SYNOPSIS
+
+        int Key( int a_context, int a_length )
+
+            a_context --> the packed context
+            a_length --> the number of chords to keep
+
+    RETURNS
+
+        the key of the prefix in the count table
+     */
+    private static int Key( int a_context, int a_length )
+    {
+        int chords = a_context & ( ( 1 << ( a_length * BITS_PER_CHORD ) ) - 1 );
+        return ( a_length << LENGTH_SHIFT ) | chords;
+    }
+}
@@ -0,0 +1,282 @@
+package com.evanbunge.chordier;
+
+import java.io.File;
+
+/*
+ProgressionGenerator
+    generates whole progressions of a given length with a beam search over the
+    end table of a model, keeping the most likely partial progressions at each
+    step. the first chord and a closing cadence can be fixed.
+
+    every buffer is allocated once by the constructor, so one generator can
+    make any number of progressions without allocating. a generator is used
+    by one thread at a time.
+
+    usage: java com.evanbunge.chordier.ProgressionGenerator [-first <chord>] [-cadence <chords>] [-width <n>] <model> <length> <count>
+        e.g. ProgressionGenerator -cadence 51 assets/DefaultModel 8 10
+        prints the most likely progressions as chord numbers with their log likelihood
+ */
+public class ProgressionGenerator
+{
+    // partial progressions kept at each step unless configured otherwise
+    public static final int DEFAULT_WIDTH = 16;
+
+    private final ChordModel m_model;
+    private final int m_length;
+    private final int m_width;
+    // chord numbers of the kept progressions, m_length per progression
+    private int[] m_beam;
+    private int[] m_nextBeam;
+    // log likelihood of each kept progression
+    private double[] m_scores;
+    private double[] m_nextScores;
+    // extensions of the kept progressions, as progression * 7 + chord index, and their scores
+    private final int[] m_candidates;
+    private final double[] m_candidateScores;
+    // chord number required at each index, 0 where any chord may go
+    private final int[] m_fixed;
+    private final float[] m_distribution;
+
+    /*
+    NAME
+
+        ProgressionGenerator - constructor for ProgressionGenerator class
+
+    SYNOPSIS
+
+        ProgressionGenerator( ChordModel a_model, int a_length, int a_width )
+
+            a_model --> the model to generate from
+            a_length --> the number of chords in each progression
+            a_width --> the number of partial progressions kept at each step,
+                        the most progressions one call can return
+
+    DESCRIPTION
+
+        allocates every buffer used while generating
+     */
+    public ProgressionGenerator( ChordModel a_model, int a_length, int a_width )
+    {
+        if ( a_length < 1 || a_width < 1 )
+        {
+            throw new IllegalArgumentException( "length and width must be positive: " + a_length + ", " + a_width );
+        }
+        m_model = a_model;
+        m_length = a_length;
+        m_width = a_width;
+        m_beam = new int[ a_width * a_length ];
+        m_nextBeam = new int[ a_width * a_length ];
+        m_scores = new double[ a_width ];
+        m_nextScores = new double[ a_width ];
+        m_candidates = new int[ a_width * CountTable.NUM_CHORDS ];
+        m_candidateScores = new double[ a_width * CountTable.NUM_CHORDS ];
+        m_fixed = new int[ a_length ];
+        m_distribution = new float[ CountTable.NUM_CHORDS ];
+    }
+
+    /*
+    NAME
+
+        Generate - generates the most likely progressions
+
+    SYNOPSIS
+
+        int Generate( int a_first, int[] a_cadence, int a_count, int[] a_out, double[] a_scores )
+
+            a_first --> the chord number of the first chord, 0 to let any chord start
+            a_cadence --> the chord numbers the progression must end with, or null
+            a_count --> the number of progressions wanted
+            a_out --> receives the chord numbers of the progressions, length chords each,
+                        most likely first
+            a_scores --> receives the natural log likelihood of each progression, or null
+
+    DESCRIPTION
+
+        starts from the empty progression and extends each kept progression by every
+            allowed chord, scoring it by the probability of the chord after the ones
+            before it, as many as the end table looks at. the width best extensions are kept for the next step.
+        ties are broken by the order of the progressions and then the chords,
+            so the result only depends on the model.
+
+    RETURNS
+
+        the number of progressions written, at most a_count and the width
+     */
+    public int Generate( int a_first, int[] a_cadence, int a_count, int[] a_out, double[] a_scores )
+    {
+        int cadence = a_cadence == null ? 0 : a_cadence.length;
+        if ( cadence > m_length || ( a_first != 0 && cadence == m_length && a_cadence[ 0 ] != a_first ) )
+        {
+            throw new IllegalArgumentException( "the first chord and cadence do not fit in " + m_length + " chords" );
+        }
+        for ( int i = 0; i < m_length; i++ )
+        {
+            m_fixed[ i ] = i >= m_length - cadence ? a_cadence[ i - ( m_length - cadence ) ] : 0;
+        }
+        if ( a_first != 0 )
+        {
+            m_fixed[ 0 ] = a_first;
+        }
+
+        // the empty progression
+        int size = 1;
+        m_scores[ 0 ] = 0;
+        for ( int index = 0; index < m_length; index++ )
+        {
+            int candidates = 0;
+            for ( int prog = 0; prog < size; prog++ )
+            {
+                int offset = prog * m_length;
+                m_model.GetEndDistribution( m_beam, offset, offset + index, m_distribution );
+                for ( int chord = 0; chord < CountTable.NUM_CHORDS; chord++ )
+                {
+                    if ( m_fixed[ index ] == 0 || m_fixed[ index ] == chord + 1 )
+                    {
+                        float probability = Math.max( m_distribution[ chord ], ChordModel.MIN_PROBABILITY );
+                        m_candidates[ candidates ] = prog * CountTable.NUM_CHORDS + chord;
+                        m_candidateScores[ candidates ] = m_scores[ prog ] + Math.log( probability );
+                        candidates++;
+                    }
+                }
+            }
+
+            size = Math.min( m_width, candidates );
+            SelectBest( candidates, size );
+            for ( int next = 0; next < size; next++ )
+            {
+                int prog = m_candidates[ next ] / CountTable.NUM_CHORDS;
+                System.arraycopy( m_beam, prog * m_length, m_nextBeam, next * m_length, index );
+                m_nextBeam[ next * m_length + index ] = m_candidates[ next ] % CountTable.NUM_CHORDS + 1;
+                m_nextScores[ next ] = m_candidateScores[ next ];
+            }
+            int[] beam = m_beam;
+            m_beam = m_nextBeam;
+            m_nextBeam = beam;
+            double[] scores = m_scores;
+            m_scores = m_nextScores;
+            m_nextScores = scores;
+        }
+
+        int count = Math.min( a_count, size );
+        System.arraycopy( m_beam, 0, a_out, 0, count * m_length );
+        if ( a_scores != null )
+        {
+            System.arraycopy( m_scores, 0, a_scores, 0, count );
+        }
+        return count;
+    }
+
+    /*
+    NAME
+
+        SelectBest - sorts the best candidates to the front
+
+    SYNOPSIS
+
+        void SelectBest( int a_candidates, int a_count )
+
+            a_candidates --> the number of candidates
+            a_count --> the number of best candidates wanted
+
+    DESCRIPTION
+
+        selects in place, best score first. candidates are made in order, so
+            on equal scores the one made first wins.
+        the beam is narrow, so selection is faster here than a heap.
+     */
+    private void SelectBest( int a_candidates, int a_count )
+    {
+        for ( int i = 0; i < a_count; i++ )
+        {
+            int best = i;
+            for ( int j = i + 1; j < a_candidates; j++ )
+            {
+                if ( m_candidateScores[ j ] > m_candidateScores[ best ]
+                        || ( m_candidateScores[ j ] == m_candidateScores[ best ] && m_candidates[ j ] < m_candidates[ best ] ) )
+                {
+                    best = j;
+                }
+            }
+            int candidate = m_candidates[ i ];
+            m_candidates[ i ] = m_candidates[ best ];
+            m_candidates[ best ] = candidate;
+            double score = m_candidateScores[ i ];
+            m_candidateScores[ i ] = m_candidateScores[ best ];
+            m_candidateScores[ best ] = score;
+        }
+    }
+
+    /*
+    NAME
+
+        main - prints the most likely progressions of a compiled model
+
+    SYNOPSIS
+
+        void main( String[] a_args )
+
+            a_args --> the options, the model file, the length and the number of progressions
+
+    DESCRIPTION
+
+        reads the model in one read and prints one progression per line as chord
+            numbers followed by its log likelihood. the lines are not padded with
+            the 0s a corpus line starts and ends with, so they are read, not trained on
+     */
+    public static void main( String[] a_args ) throws Exception
+    {
+        int first = 0;
+        int[] cadence = null;
+        int width = DEFAULT_WIDTH;
+        int arg = 0;
+        while ( arg + 1 < a_args.length && a_args[ arg ].startsWith( "-" ) )
+        {
+            if ( a_args[ arg ].equals( "-first" ) )
+            {
+                first = Integer.parseInt( a_args[ arg + 1 ] );
+            }
+            else if ( a_args[ arg ].equals( "-cadence" ) )
+            {
+                String chords = a_args[ arg + 1 ];
+                cadence = new int[ chords.length() ];
+                for ( int i = 0; i < cadence.length; i++ )
+                {
+                    cadence[ i ] = chords.charAt( i ) - '0';
+                }
+            }
+            else if ( a_args[ arg ].equals( "-width" ) )
+            {
+                width = Integer.parseInt( a_args[ arg + 1 ] );
+            }
+            else
+            {
+                break;
+            }
+            arg += 2;
+        }
+        if ( a_args.length - arg != 3 )
+        {
+            System.err.println( "usage: ProgressionGenerator [-first <chord>] [-cadence <chords>] [-width <n>] <model> <length> <count>" );
+            System.exit( 1 );
+        }
+        ChordModel model = ChordModel.Read( new File( a_args[ arg ] ) );
+        int length = Integer.parseInt( a_args[ arg + 1 ] );
+        int count = Integer.parseInt( a_args[ arg + 2 ] );
+
+        ProgressionGenerator generator = new ProgressionGenerator( model, length, Math.max( width, count ) );
+        int[] progressions = new int[ count * length ];
+        double[] scores = new double[ count ];
+        int generated = generator.Generate( first, cadence, count, progressions, scores );
+        StringBuilder line = new StringBuilder();
+        for ( int p = 0; p < generated; p++ )
+        {
+            line.setLength( 0 );
+            for ( int i = 0; i < length; i++ )
+            {
+                line.append( progressions[ p * length + i ] );
+            }
+            line.append( ' ' ).append( String.format( "%.3f", scores[ p ] ) );
+            System.out.println( line );
+        }
+    }
+}
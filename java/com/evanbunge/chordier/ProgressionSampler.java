@@ -0,0 +1,110 @@
+package com.evanbunge.chordier;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/*
+ProgressionSampler
+    draws random progressions from the end table of a model, each chord
+    following the ones before it, as many as the end table looks at, with
+    the probability the model gives it.
+    every chord is drawn from a precomputed alias table with two random
+    numbers, a quantized model's too, so the work per chord is constant.
+
+    the same seed always gives the same progressions from the same model,
+    so a sampled corpus can be made again from its seed.
+
+    usage: java com.evanbunge.chordier.ProgressionSampler <model> <length> <count> <seed>
+        e.g. ProgressionSampler assets/DefaultModel 8 1000 42 > sampled
+        prints the progressions in the corpus format, one per line
+ */
+public class ProgressionSampler
+{
+    private final ChordModel m_model;
+    private final Random m_random;
+
+    /*
+    NAME
+
+        ProgressionSampler - constructor for ProgressionSampler class
+
+    SYNOPSIS
+
+        ProgressionSampler( ChordModel a_model, long a_seed )
+
+            a_model --> the ranked model to sample from
+            a_seed --> the seed of the random numbers
+     */
+    public ProgressionSampler( ChordModel a_model, long a_seed )
+    {
+        m_model = a_model;
+        m_random = new Random( a_seed );
+    }
+
+    /*
+    NAME
+
+        Sample - draws one progression
+
+    SYNOPSIS
+
+        void Sample( int[] a_out, int a_length )
+
+            a_out --> receives the chord numbers of the progression
+            a_length --> the number of chords to draw
+
+    DESCRIPTION
+
+        draws each chord given the ones before it, starting from the start of a progression.
+        nothing is allocated.
+     */
+    public void Sample( int[] a_out, int a_length )
+    {
+        for ( int i = 0; i < a_length; i++ )
+        {
+            a_out[ i ] = m_model.SampleEndChord( a_out, 0, i, m_random ) + 1;
+        }
+    }
+
+    /*
+    NAME
+
+        main - prints sampled progressions of a compiled model
+
+    SYNOPSIS
+
+        void main( String[] a_args )
+
+            a_args --> the model file, the length, the number of progressions and the seed
+     */
+    public static void main( String[] a_args ) throws Exception
+    {
+        if ( a_args.length != 4 )
+        {
+            System.err.println( "usage: ProgressionSampler <model> <length> <count> <seed>" );
+            System.exit( 1 );
+        }
+        ChordModel model = ChordModel.Read( new File( a_args[ 0 ] ) );
+        int length = Integer.parseInt( a_args[ 1 ] );
+        int count = Integer.parseInt( a_args[ 2 ] );
+        ProgressionSampler sampler = new ProgressionSampler( model, Long.parseLong( a_args[ 3 ] ) );
+
+        int[] chords = new int[ length ];
+        char[] line = new char[ length ];
+        Writer out = new BufferedWriter( new OutputStreamWriter( System.out, "US-ASCII" ) );
+        for ( int p = 0; p < count; p++ )
+        {
+            sampler.Sample( chords, length );
+            for ( int i = 0; i < length; i++ )
+            {
+                line[ i ] = (char) ( '0' + chords[ i ] );
+            }
+            out.write( line );
+            out.write( '\n' );
+        }
+        out.flush();
+    }
+}
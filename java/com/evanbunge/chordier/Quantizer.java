@@ -0,0 +1,120 @@
+package com.evanbunge.chordier;
+
+/*
+Quantizer
+    codes probabilities as small whole numbers on a log scale so a model can
+    keep one or two bytes per chord instead of its counts.
+
+    a code is the negative natural log of the probability divided by a fixed
+    step, so equal ratios between probabilities are equal distances between
+    codes. the largest code stands for a probability of zero. probabilities
+    below MIN_PROBABILITY get the largest code before it.
+
+    decoding looks the code up in tables built once: 8 bit codes in one table
+    of 256 levels, 16 bit codes as the product of a level for their high byte
+    and a level for their low byte, so no exp is computed per query.
+ */
+public class Quantizer
+{
+    // smallest probability told apart from zero
+    public static final double MIN_PROBABILITY = 1e-7;
+    // log of the smallest probability, the end of the coded range
+    private static final double LOG_RANGE = - Math.log( MIN_PROBABILITY );
+    // step between 8 bit codes, the last code is kept for zero
+    private static final double STEP_8 = LOG_RANGE / 254;
+    // step between 16 bit codes, the last code is kept for zero
+    private static final double STEP_16 = LOG_RANGE / 65534;
+    // probability of each 8 bit code
+    private static final float[] LEVELS_8 = new float[ 256 ];
+    // factors of the probability of a 16 bit code for its high and low byte
+    private static final float[] LEVELS_16_HIGH = new float[ 256 ];
+    private static final float[] LEVELS_16_LOW = new float[ 256 ];
+
+    static
+    {
+        for ( int i = 0; i < 256; i++ )
+        {
+            LEVELS_8[ i ] = (float) Math.exp( - i * STEP_8 );
+            LEVELS_16_HIGH[ i ] = (float) Math.exp( - ( i << 8 ) * STEP_16 );
+            LEVELS_16_LOW[ i ] = (float) Math.exp( - i * STEP_16 );
+        }
+        LEVELS_8[ 255 ] = 0;
+    }
+
+    /*
+    NAME
+
+        GetMaxCode - gets the code of a probability of zero
+
+    SYNOPSIS
+
+        int GetMaxCode( int a_bits )
+
+            a_bits --> 8 or 16
+
+    RETURNS
+
+        the largest code of the given size
+     */
+    public static int GetMaxCode( int a_bits )
+    {
+        return ( 1 << a_bits ) - 1;
+    }
+
+    /*
+    NAME
+
+        Encode - codes a probability
+
+    SYNOPSIS
+
+        int Encode( double a_probability, int a_bits )
+
+            a_probability --> the probability, 0 to 1
+            a_bits --> 8 or 16
+
+    RETURNS
+
+        the nearest code, the largest code if a_probability is zero
+     */
+    public static int Encode( double a_probability, int a_bits )
+    {
+        int max = GetMaxCode( a_bits );
+        if ( a_probability <= 0 )
+        {
+            return max;
+        }
+        double step = a_bits == 8 ? STEP_8 : STEP_16;
+        long code = Math.round( - Math.log( Math.min( a_probability, 1 ) ) / step );
+        return (int) Math.min( code, max - 1 );
+    }
+
+    /*
+    NAME
+
+        Decode - gets the probability of a code
+
+    SYNOPSIS
+
+        float Decode( int a_code, int a_bits )
+
+            a_code --> the code
+            a_bits --> 8 or 16
+
+    DESCRIPTION
+
+        at most two table lookups and a multiply
+
+    RETURNS
+
+        the probability the code stands for
+     */
+    public static float Decode( int a_code, int a_bits )
+    {
+        if ( a_bits == 8 )
+        {
+            return LEVELS_8[ a_code ];
+        }
+        return a_code == 0xFFFF ? 0 : LEVELS_16_HIGH[ a_code >>> 8 ] * LEVELS_16_LOW[ a_code & 0xFF ];
+    }
+}
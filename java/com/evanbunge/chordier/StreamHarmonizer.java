@@ -0,0 +1,211 @@
+package com.evanbunge.chordier;
+
+import java.util.Arrays;
+
+/*
+StreamHarmonizer
+    harmonizes a melody while it is being played, from a keyboard or a MIDI
+    file, instead of from the finished grid of MelodyPage.
+    notes come in as timed events and each slot gets its chord as soon as the
+    first few sixteenths of it, the lookahead, have gone by. a chord played
+    cannot be taken back, so each chord is picked after the chord before it
+    with Harmonizer.Step from the weights of the sixteenths heard so far, the
+    same weights MelodyUtil gives a whole slot.
+
+    with no lookahead the chord is picked at the downbeat from the last note
+    before it, and every sixteenth of lookahead waits for one more note of the
+    slot and weighs it instead.
+    picking a chord takes a few microseconds, so the chord is ready within the
+    lookahead of the downbeat. everything is allocated when the stream is made,
+    nothing per event. a stream is used by one thread at a time.
+ */
+public class StreamHarmonizer
+{
+    /*
+    Listener
+        told the chord of each slot as soon as it is picked, on the thread
+        that passed the event
+     */
+    public interface Listener
+    {
+        void OnChord( int a_slot, int a_chord );
+    }
+
+    private final Harmonizer m_harmonizer;
+    private final Listener m_listener;
+    // sixteenths per slot, and how many of them are heard before its chord is picked
+    private final int m_subdivision;
+    private final int m_lookahead;
+    // event time units in a beat
+    private final long m_ticksPerBeat;
+    // the last sixteenth of the slot before, then the sixteenths of the current slot
+    private final byte[] m_notes;
+    // reused buffer for the weight of each chord
+    private final int[] m_weights;
+    // the slot being heard, whether its chord is picked, and the chord picked before it
+    private int m_slot;
+    private boolean m_picked;
+    private int m_chord;
+    // the sixteenth of the last event
+    private long m_position;
+
+    /*
+    NAME
+
+        StreamHarmonizer - constructor for StreamHarmonizer class
+
+    SYNOPSIS
+
+        StreamHarmonizer( ChordModel a_model, int a_freq, int a_lookahead, long a_ticksPerBeat, Listener a_listener )
+
+            a_model --> the model to harmonize with, null while it is loading
+            a_freq --> the number of beats per chord
+            a_lookahead --> the sixteenths of a slot to hear before picking its chord,
+                            0 to pick at the downbeat, at most a_freq * 4
+            a_ticksPerBeat --> the time units events are given in per beat,
+                               the resolution of a MIDI file or milliseconds per beat
+            a_listener --> told each chord as it is picked
+     */
+    public StreamHarmonizer( ChordModel a_model, int a_freq, int a_lookahead, long a_ticksPerBeat, Listener a_listener )
+    {
+        m_subdivision = a_freq * MelodyUtil.NOTES_PER_BEAT;
+        if ( a_lookahead < 0 || a_lookahead > m_subdivision )
+        {
+            throw new IllegalArgumentException( "lookahead of " + a_lookahead + " sixteenths does not fit a slot of " + m_subdivision );
+        }
+        m_harmonizer = new Harmonizer( a_model );
+        m_listener = a_listener;
+        m_lookahead = a_lookahead;
+        m_ticksPerBeat = a_ticksPerBeat;
+        m_notes = new byte[ m_subdivision + 1 ];
+        m_weights = new int[ CountTable.NUM_CHORDS ];
+        Reset();
+    }
+
+    /*
+    NAME
+
+        Reset - starts a new stream
+
+    SYNOPSIS
+
+        void Reset()
+
+    DESCRIPTION
+
+        time starts again at 0 in the first slot, with no chord before it
+     */
+    public void Reset()
+    {
+        Arrays.fill( m_notes, MelodyUtil.NO_NOTE );
+        m_slot = 0;
+        m_picked = false;
+        m_chord = 0;
+        m_position = 0;
+    }
+
+    /*
+    NAME
+
+        Note - takes a note of the melody
+
+    SYNOPSIS
+
+        void Note( long a_time, int a_note )
+
+            a_time --> when the note starts, in ticks from the start of the stream
+            a_note --> the note of the scale 0 to 6, or MelodyUtil.NO_NOTE
+
+    DESCRIPTION
+
+        moves time up to the note with Advance, picking the chords due by then,
+            and writes the note to its sixteenth. a later note in the same sixteenth
+            replaces it.
+
+    RETURNS
+
+        the chord number playing at the note, 0 if its slot has no chord yet
+     */
+    public int Note( long a_time, int a_note )
+    {
+        Advance( a_time );
+        m_notes[ (int) ( m_position - (long) m_slot * m_subdivision ) + 1 ] = (byte) a_note;
+        return m_picked ? m_chord : 0;
+    }
+
+    /*
+    NAME
+
+        Advance - moves time forward
+
+    SYNOPSIS
+
+        void Advance( long a_time )
+
+            a_time --> the time now, in ticks from the start of the stream
+
+    DESCRIPTION
+
+        call as the clock runs, so a chord whose lookahead passes with no note in
+            it is still picked on time. sixteenths with no note are rests.
+        picks the chord of every slot whose lookahead has gone by, then moves
+            to the slot of a_time, telling the listener each chord.
+        time before the last event is taken as the last event.
+     */
+    public void Advance( long a_time )
+    {
+        m_position = Math.max( m_position, a_time * MelodyUtil.NOTES_PER_BEAT / m_ticksPerBeat );
+        while ( true )
+        {
+            long start = (long) m_slot * m_subdivision;
+            if ( ! m_picked )
+            {
+                if ( m_position < start + m_lookahead )
+                {
+                    return;
+                }
+                Pick();
+            }
+            if ( m_position < start + m_subdivision )
+            {
+                return;
+            }
+            // the last sixteenth stays as the note before the next slot
+            m_notes[ 0 ] = m_notes[ m_subdivision ];
+            Arrays.fill( m_notes, 1, m_notes.length, MelodyUtil.NO_NOTE );
+            m_slot++;
+            m_picked = false;
+        }
+    }
+
+    /*
+    NAME
+
+        Pick - picks the chord of the current slot
+
+    SYNOPSIS
+
+        void Pick()
+
+    DESCRIPTION
+
+        weighs the sixteenths heard of the slot like MelodyUtil, picks the chord
+            after the one before and tells the listener.
+        with no lookahead none of the slot is heard, so the last note of the slot
+            before is weighed as if it fell on the downbeat.
+     */
+    private void Pick()
+    {
+        if ( m_lookahead == 0 )
+        {
+            MelodyUtil.GetWeights( m_notes, 0, 1, m_weights, 0 );
+        }
+        else
+        {
+            MelodyUtil.GetWeights( m_notes, 1, m_lookahead, m_weights, 0 );
+        }
+        m_chord = m_harmonizer.Step( m_chord, m_weights, 0 );
+        m_picked = true;
+        m_listener.OnChord( m_slot, m_chord );
+    }
+}
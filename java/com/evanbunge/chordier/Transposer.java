@@ -0,0 +1,212 @@
+package com.evanbunge.chordier;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/*
+Transposer
+    moves progressions from one key to another.
+    a progression is kept as chord numbers of its key, so moving it between two
+    major or two minor keys keeps every number and only the names change.
+    moving between a major and a minor key keeps what each chord does:
+    the chord numbers are turned so the tonic of one key becomes the tonic of
+    the other, I IV V in C becomes i iv v in A minor.
+    the chord numbers for each pair of modes and the key a given number of
+    semitones from every key are worked out once when the class is loaded.
+
+    songs are moved a line at a time from a reader to a writer, so a whole
+    library can be moved without holding any song in memory.
+ */
+public class Transposer
+{
+    // number of semitones in an octave
+    public static final int OCTAVE = 12;
+    // the shifts offered to the user, down a fourth to up a tritone
+    public static final int MIN_SHIFT = - 5;
+    public static final int MAX_SHIFT = 6;
+    // chord number of the tonic of a minor key, its relative major's vi
+    private static final int MINOR_TONIC = 6;
+    // the key of each pitch, spelled the way it is most often written
+    private static final String[] MAJOR_KEYS = { "C", "D♭", "D", "E♭", "E", "F", "F♯", "G", "A♭", "A", "B♭", "B" };
+    private static final String[] MINOR_KEYS = { "Cm", "C♯m", "Dm", "E♭m", "Em", "Fm", "F♯m", "Gm", "G♯m", "Am", "B♭m", "Bm" };
+    // pitch of each natural note, C is 0
+    private static final String LETTERS = "C D EF G A B";
+    // the chord number each chord number becomes, [from minor][to minor][chord number]
+    private static final int[][][] DEGREES = new int[ 2 ][ 2 ][ CountTable.NUM_CHORDS + 1 ];
+    // the pitch of every key ChordList knows, by key name
+    private static final Map<String, Integer> PITCHES = new HashMap<>();
+
+    static
+    {
+        for ( int from = 0; from < 2; from++ )
+        {
+            for ( int to = 0; to < 2; to++ )
+            {
+                int shift = ( to - from ) * ( MINOR_TONIC - 1 ) + CountTable.NUM_CHORDS;
+                for ( int chord = 1; chord <= CountTable.NUM_CHORDS; chord++ )
+                {
+                    DEGREES[ from ][ to ][ chord ] = ( chord - 1 + shift ) % CountTable.NUM_CHORDS + 1;
+                }
+            }
+        }
+        String[] accidentals = { "", "♯", "♭" };
+        for ( int letter = 0; letter < LETTERS.length(); letter++ )
+        {
+            if ( LETTERS.charAt( letter ) == ' ' )
+            {
+                continue;
+            }
+            for ( int accidental = 0; accidental < accidentals.length; accidental++ )
+            {
+                String key = LETTERS.charAt( letter ) + accidentals[ accidental ];
+                int pitch = ( letter + ( accidental == 1 ? 1 : accidental == 2 ? - 1 : 0 ) + OCTAVE ) % OCTAVE;
+                PITCHES.put( key, pitch );
+                PITCHES.put( key + "m", pitch );
+            }
+        }
+    }
+
+    /*
+    NAME
+
+        IsMinor - tells if a key is minor
+
+    SYNOPSIS
+
+        boolean IsMinor( String a_key )
+
+            a_key --> the key name, a minor key ends with "m"
+
+    RETURNS
+
+        true if the key is minor
+     */
+    public static boolean IsMinor( String a_key )
+    {
+        return a_key.endsWith( "m" );
+    }
+
+    /*
+    NAME
+
+        Shift - gets the key a number of semitones from another
+
+    SYNOPSIS
+
+        String Shift( String a_key, int a_semitones )
+
+            a_key --> the key to move from
+            a_semitones --> how far to move, up if positive
+
+    RETURNS
+
+        the key of the same mode at the new pitch, spelled the common way
+     */
+    public static String Shift( String a_key, int a_semitones )
+    {
+        Integer pitch = PITCHES.get( a_key );
+        if ( pitch == null )
+        {
+            throw new IllegalArgumentException( "unknown key " + a_key );
+        }
+        int shifted = ( ( pitch + a_semitones ) % OCTAVE + OCTAVE ) % OCTAVE;
+        return IsMinor( a_key ) ? MINOR_KEYS[ shifted ] : MAJOR_KEYS[ shifted ];
+    }
+
+    /*
+    NAME
+
+        DescribeShift - names a shift for a menu
+
+    SYNOPSIS
+
+        String DescribeShift( int a_semitones )
+
+            a_semitones --> the shift, up if positive
+
+    RETURNS
+
+        e.g. "Up 2 semitones"
+     */
+    public static String DescribeShift( int a_semitones )
+    {
+        int size = Math.abs( a_semitones );
+        return ( a_semitones > 0 ? "Up " : "Down " ) + size + ( size == 1 ? " semitone" : " semitones" );
+    }
+
+    /*
+    NAME
+
+        Transpose - moves a progression to another key
+
+    SYNOPSIS
+
+        void Transpose( int[] a_chords, int a_length, String a_from, String a_to, int[] a_out )
+
+            a_chords --> chord numbers of the progression, 0 for no chord
+            a_length --> the number of chords in the progression
+            a_from --> the key of the progression
+            a_to --> the key to move to
+            a_out --> receives the chord numbers in the new key, may be a_chords
+
+    DESCRIPTION
+
+        one table lookup per chord, nothing is allocated
+     */
+    public static void Transpose( int[] a_chords, int a_length, String a_from, String a_to, int[] a_out )
+    {
+        int[] degrees = DEGREES[ IsMinor( a_from ) ? 1 : 0 ][ IsMinor( a_to ) ? 1 : 0 ];
+        for ( int i = 0; i < a_length; i++ )
+        {
+            a_out[ i ] = degrees[ a_chords[ i ] ];
+        }
+    }
+
+    /*
+    NAME
+
+        TransposeSong - moves a saved song to the key a number of semitones away
+
+    SYNOPSIS
+
+        String TransposeSong( BufferedReader a_in, PrintWriter a_out, int a_semitones )
+
+            a_in --> the song as FileHandler saves it, its key and then a chord name per line
+            a_out --> receives the song in the new key in the same layout
+            a_semitones --> how far to move, up if positive
+
+    DESCRIPTION
+
+        reads the key, then turns each chord name into its chord number in the old key
+            and writes the name of that number in the new key as soon as it is read.
+        a line that is not a chord of the key is written as a chord not chosen yet.
+
+    RETURNS
+
+        the new key, null if the song is empty
+     */
+    public static String TransposeSong( BufferedReader a_in, PrintWriter a_out, int a_semitones ) throws IOException
+    {
+        String from = a_in.readLine();
+        if ( from == null )
+        {
+            return null;
+        }
+        String to = Shift( from, a_semitones );
+        ChordList fromChords = ChordList.Get( from );
+        ChordList toChords = ChordList.Get( to );
+        int[] degrees = DEGREES[ IsMinor( from ) ? 1 : 0 ][ IsMinor( to ) ? 1 : 0 ];
+
+        a_out.println( to );
+        String chord;
+        while ( ( chord = a_in.readLine() ) != null )
+        {
+            int number = degrees[ fromChords.GetChordIndex( chord ) + 1 ];
+            a_out.println( number == 0 ? "" : toChords.GetChord( number - 1 ) );
+        }
+        return to;
+    }
+}